@@ -0,0 +1,133 @@
+package ch.admin.bag.covidcertificate.gateway.client.eiam;
+
+import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.QueryUsersResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.util.StreamUtils;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.transport.WebServiceConnection;
+import org.springframework.ws.transport.WebServiceMessageSender;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EIAMClient#queryUser(String, String, String)} as configured by {@link EIAMConfig}, without the network: the
+ * request is serialized and discarded and the recorded <code>queryUsersResponse.xml</code> next to this class is
+ * returned. Compares the pooled with the default marshaller and the schema validation modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EIAMClientBenchmark {
+    private static final String CONTEXT_PATH = "ch.admin.bag.covidcertificate.gateway.eiam.adminservice";
+    private static final URI URL = URI.create("https://eiam.example.admin.ch/nevisidm/services/v1/AdminService");
+
+    @Param({"true", "false"})
+    private boolean pooledMarshaller;
+
+    @Param({"none", "response", "request-and-response"})
+    private String validation;
+
+    private EIAMClient eiamClient;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] response = StreamUtils.copyToByteArray(
+                new ClassPathResource("queryUsersResponse.xml", EIAMClientBenchmark.class).getInputStream());
+
+        var marshaller = pooledMarshaller ? new PooledJaxb2Marshaller(20) : new Jaxb2Marshaller();
+        marshaller.setContextPath(CONTEXT_PATH);
+        marshaller.afterPropertiesSet();
+
+        var interceptor = new SamplingPayloadValidatingInterceptor(1.0);
+        interceptor.setSchema(new ClassPathResource("eiam/nevisidm_servicetypes_v1_43.xsd"));
+        interceptor.setValidateRequest("request-and-response".equals(validation));
+        interceptor.setValidateResponse(!"none".equals(validation));
+        interceptor.afterPropertiesSet();
+
+        var messageFactory = new JeapSaajSoapMessageFactory();
+        messageFactory.afterPropertiesSet();
+
+        eiamClient = new EIAMClient();
+        eiamClient.setDefaultUri(URL.toString());
+        eiamClient.setMarshaller(marshaller);
+        eiamClient.setUnmarshaller(marshaller);
+        eiamClient.setMessageSender(new RecordedResponseMessageSender(response));
+        eiamClient.setInterceptors(new ClientInterceptor[]{interceptor});
+        eiamClient.setMessageFactory(messageFactory);
+        eiamClient.afterPropertiesSet();
+    }
+
+    @Benchmark
+    public QueryUsersResponse queryUser() {
+        return eiamClient.queryUser("5f0e4a3c-8a1b-4f6e-9d2c-7b1e0a9c3d42", "E-ID CH-LOGIN", EIAMConfig.CLIENT_NAME);
+    }
+
+    private static class RecordedResponseMessageSender implements WebServiceMessageSender {
+        private final byte[] response;
+
+        RecordedResponseMessageSender(byte[] response) {
+            this.response = response;
+        }
+
+        @Override
+        public WebServiceConnection createConnection(URI uri) {
+            return new WebServiceConnection() {
+                @Override
+                public void send(WebServiceMessage message) throws IOException {
+                    message.writeTo(OutputStream.nullOutputStream());
+                }
+
+                @Override
+                public WebServiceMessage receive(WebServiceMessageFactory messageFactory) throws IOException {
+                    return messageFactory.createWebServiceMessage(new ByteArrayInputStream(response));
+                }
+
+                @Override
+                public URI getUri() {
+                    return uri;
+                }
+
+                @Override
+                public boolean hasError() {
+                    return false;
+                }
+
+                @Override
+                public String getErrorMessage() {
+                    return null;
+                }
+
+                @Override
+                public void close() {
+                    // nothing to release
+                }
+            };
+        }
+
+        @Override
+        public boolean supports(URI uri) {
+            return true;
+        }
+    }
+}
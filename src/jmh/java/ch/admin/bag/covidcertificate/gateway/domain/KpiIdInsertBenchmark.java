@@ -0,0 +1,102 @@
+package ch.admin.bag.covidcertificate.gateway.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Inserts KPI rows with random and with time-ordered ids into a PostgreSQL table with the columns and the primary key
+ * of <code>kpi</code>. One operation is a JDBC batch of {@link #BATCH_SIZE} rows, as written by the KPI writer. The
+ * number of rows, the size of the primary key index and of the table and the written WAL are printed after each trial.
+ * Requires the database of <code>docker/docker-compose.yml</code>, or the one given by the system properties
+ * <code>jmh.db.url</code>, <code>jmh.db.user</code> and <code>jmh.db.password</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class KpiIdInsertBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final String TABLE = "kpi_id_benchmark";
+
+    @Param({"random", "time-ordered"})
+    private String ids;
+
+    private Connection connection;
+    private PreparedStatement insert;
+    private Supplier<UUID> idGenerator;
+    private String walStart;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("jmh.db.url", "jdbc:postgresql://localhost:3121/cc-api-gateway"),
+                System.getProperty("jmh.db.user", "cc-api-gateway"),
+                System.getProperty("jmh.db.password", "secret"));
+        idGenerator = "random".equals(ids) ? UUID::randomUUID : TimeOrderedUuidGenerator::next;
+        try (var statement = connection.createStatement()) {
+            statement.execute("drop table if exists " + TABLE);
+            statement.execute("create table " + TABLE + " (id uuid not null primary key, timestamp timestamp not null, " +
+                    "type varchar not null, value varchar not null, uvci varchar(39), details varchar(128), country varchar(2))");
+            try (var resultSet = statement.executeQuery("select pg_current_wal_lsn()")) {
+                resultSet.next();
+                walStart = resultSet.getString(1);
+            }
+        }
+        insert = connection.prepareStatement("insert into " + TABLE + " (id, timestamp, type, value, uvci, details, country) values (?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    @Benchmark
+    public int[] insertBatch() throws SQLException {
+        var timestamp = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            insert.setObject(1, idGenerator.get());
+            insert.setTimestamp(2, timestamp);
+            insert.setString(3, "v");
+            insert.setString(4, "a0b1c2d3-e4f5-4a6b-8c7d-9e0f1a2b3c4d");
+            insert.setString(5, "urn:uvci:01:CH:F0FDABC0D1E1D79F7A5DD1F0");
+            insert.setString(6, null);
+            insert.setString(7, "CH");
+            insert.addBatch();
+        }
+        return insert.executeBatch();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (var statement = connection.createStatement()) {
+            try (var resultSet = statement.executeQuery("select count(*), pg_relation_size('" + TABLE + "_pkey'), " +
+                    "pg_relation_size('" + TABLE + "'), pg_wal_lsn_diff(pg_current_wal_lsn(), '" + walStart + "') from " + TABLE)) {
+                resultSet.next();
+                System.out.printf("%n%s ids: %d rows, primary key %d kB, table %d kB, WAL %d kB%n", ids,
+                        resultSet.getLong(1), resultSet.getLong(2) / 1024, resultSet.getLong(3) / 1024, resultSet.getLong(4) / 1024);
+            }
+            statement.execute("drop table " + TABLE);
+        } finally {
+            insert.close();
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ch.admin.bag.covidcertificate.gateway.filters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the former String based canonicalization of the request body with {@link BodyCanonicalizer}. Run with
+ * <code>-prof gc</code> to see the allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BodyCanonicalizerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int vaccinations;
+
+    private byte[] body;
+    private PublicKey publicKey;
+    private Signature signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        var json = new StringBuilder("{\n  \"name\": {\n    \"familyName\": \"Muster\",\n    \"givenName\": \"Hans\"\n  },\n")
+                .append("  \"dateOfBirth\": \"2000-05-10\",\n  \"vaccinationInfo\": [\n");
+        for (int i = 0; i < vaccinations; i++) {
+            json.append("    {\n")
+                    .append("      \"medicinalProduct\": \"EU/1/20/1528\",\n")
+                    .append("      \"numberOfDoses\": 2,\n")
+                    .append("      \"totalNumberOfDoses\": 2,\n")
+                    .append("      \"vaccinationDate\": \"2021-05-09\",\n")
+                    .append("      \"countryOfVaccination\": \"CH\"\n")
+                    .append(i < vaccinations - 1 ? "    },\n" : "    }\n");
+        }
+        json.append("  ],\n  \"language\": \"de\"\n}");
+        body = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
+        keyPairGen.initialize(2048);
+        publicKey = keyPairGen.generateKeyPair().getPublic();
+        signature = Signature.getInstance("SHA256withRSA");
+    }
+
+    @Benchmark
+    public Signature stringReplaceAll() throws Exception {
+        signature.initVerify(publicKey);
+        var reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body)));
+        String canonicalBody = reader.lines().collect(Collectors.joining()).replaceAll("[\\n\\r\\t ]", "");
+        signature.update(canonicalBody.getBytes());
+        return signature;
+    }
+
+    @Benchmark
+    public Signature bodyCanonicalizer() throws Exception {
+        signature.initVerify(publicKey);
+        BodyCanonicalizer.update(signature, body);
+        return signature;
+    }
+}
@@ -0,0 +1,90 @@
+package ch.admin.bag.covidcertificate.gateway.filters;
+
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Integrity check of a signed certificate create request, from wrapping the request to forwarding it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IntegrityFilterBenchmark {
+    private static final String BODY = "{\n" +
+            "  \"name\": {\n" +
+            "    \"familyName\": \"Rochat\",\n" +
+            "    \"givenName\": \"Céline\"\n" +
+            "  },\n" +
+            "  \"dateOfBirth\": \"1985-09-20\",\n" +
+            "  \"language\": \"de\",\n" +
+            "  \"vaccinationInfo\": [\n" +
+            "    {\n" +
+            "      \"medicinalProductCode\": \"EU/1/20/1507\",\n" +
+            "      \"numberOfDoses\": 2,\n" +
+            "      \"totalNumberOfDoses\": 2,\n" +
+            "      \"vaccinationDate\": \"2021-05-14\",\n" +
+            "      \"countryOfVaccination\": \"CH\"\n" +
+            "    }\n" +
+            "  ]\n" +
+            "}";
+
+    private final FilterChain filterChain = (request, response) -> {
+    };
+    private IntegrityFilter integrityFilter;
+    private String certificate;
+    private String signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
+        keyPairGen.initialize(4096);
+        KeyPair keyPair = keyPairGen.generateKeyPair();
+        certificate = CertificateUtil.convertX509ToString(CertificateUtil.getX509Certificate(keyPair));
+
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(BODY.replaceAll("[\\n\\r\\t ]", "").getBytes(StandardCharsets.UTF_8));
+        signature = Base64.getEncoder().encodeToString(signer.sign());
+
+        integrityFilter = new IntegrityFilter(new ObjectMapper(),
+                new ClientCertificateKeyCache(new SimpleMeterRegistry(), 10, Duration.ofHours(1)),
+                new CertificateStageMetrics(new SimpleMeterRegistry(), List.of()));
+    }
+
+    @Benchmark
+    public MockHttpServletResponse checkIntegrity() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/api/v1/covidcertificate/vaccination");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        request.addHeader(IntegrityFilter.HEADER_KEY_NAME, certificate);
+        request.addHeader(IntegrityFilter.HEADER_HASH_NAME, signature);
+        var response = new MockHttpServletResponse();
+        integrityFilter.doFilterInternal(request, response, filterChain);
+        return response;
+    }
+}
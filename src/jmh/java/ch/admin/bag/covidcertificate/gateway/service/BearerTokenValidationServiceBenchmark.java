@@ -0,0 +1,56 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import ch.admin.bag.covidcertificate.gateway.util.CustomTokenProviderUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Validation of a valid OTP bearer token, including the JWT signature check and the revocation lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BearerTokenValidationServiceBenchmark {
+
+    private BearerTokenValidationService service;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
+        keyPairGen.initialize(2048);
+        KeyPair keyPair = keyPairGen.generateKeyPair();
+
+        service = new BearerTokenValidationService(mock(OtpRevocationService.class));
+        ReflectionTestUtils.setField(service, "publicKey", Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        service.init();
+
+        var tokenProvider = new CustomTokenProviderUtil(TimeUnit.DAYS.toMillis(1),
+                Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()), "benchmark");
+        token = tokenProvider.createToken("benchmark-user", "benchmark-idp", "benchmark-jti");
+    }
+
+    @Benchmark
+    public String validate() throws Exception {
+        return service.validate(token, "127.0.0.1");
+    }
+}
@@ -0,0 +1,138 @@
+package ch.admin.bag.covidcertificate.gateway.service.config;
+
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Certificate creation call of the management service over loopback with the protocol and compression settings of
+ * {@link RestClientConfig}. The server answers every request with a create response of typical size; its PDF is either
+ * random bytes (worst case for compression) or repeated PDF content. The bytes received on the socket per request,
+ * including the HTTP/1.1 or h2c framing, are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManagementServiceProtocolBenchmark {
+
+    private static final String REQUEST = "{\"language\":\"de\",\"personData\":{\"name\":{\"familyName\":\"Rochat\",\"givenName\":\"Céline\"},\"dateOfBirth\":\"1964-03-14\"}}";
+
+    @Param({"false", "true"})
+    private boolean http2;
+
+    @Param({"false", "true"})
+    private boolean compression;
+
+    @Param({"random", "repeated"})
+    private String pdf;
+
+    private DisposableServer server;
+    private ConnectionProvider connectionProvider;
+    private HttpClient httpClient;
+    private final WireBytesCounter wireBytesCounter = new WireBytesCounter();
+    private final AtomicLong requests = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] response = new ObjectMapper().writeValueAsBytes(
+                new CovidCertificateCreateResponseDto(pdf(), randomBytes(8_000), "urn:uvci:01:CH:F0FDABC0D1E1D79F7A5DD1F0", null));
+        server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .compress(true)
+                .handle((request, httpResponse) -> httpResponse
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .sendByteArray(request.receive().then(Mono.just(response))))
+                .bindNow();
+
+        connectionProvider = ConnectionProvider.create("benchmark", 1);
+        httpClient = RestClientConfig.configureProtocol(HttpClient.create(connectionProvider), "http://localhost/", http2)
+                .compress(compression)
+                .baseUrl("http://localhost:" + server.port())
+                .doOnChannelInit((observer, channel, remoteAddress) -> channel.pipeline().addFirst(wireBytesCounter));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%nReceived bytes per request: %d%n", wireBytesCounter.bytes.get() / Math.max(1, requests.get()));
+        connectionProvider.disposeLater().block();
+        server.disposeNow();
+    }
+
+    @Benchmark
+    public byte[] createCertificate() {
+        requests.incrementAndGet();
+        return httpClient.headers(headers -> headers.set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE))
+                .post()
+                .uri("/api/v1/covidcertificate/vaccination")
+                .send(ByteBufFlux.fromString(Mono.just(REQUEST)))
+                .responseContent()
+                .aggregate()
+                .asByteArray()
+                .block();
+    }
+
+    private byte[] pdf() {
+        if ("random".equals(pdf)) {
+            return randomBytes(60_000);
+        }
+        var page = "BT /F1 12 Tf 72 712 Td (COVID Certificate) Tj ET\n".getBytes(StandardCharsets.US_ASCII);
+        var pdfBytes = new byte[60_000];
+        for (int i = 0; i < pdfBytes.length; i++) {
+            pdfBytes[i] = page[i % page.length];
+        }
+        return pdfBytes;
+    }
+
+    private static byte[] randomBytes(int length) {
+        var bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    @ChannelHandler.Sharable
+    private static class WireBytesCounter extends ChannelInboundHandlerAdapter {
+        private final AtomicLong bytes = new AtomicLong();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof ByteBuf) {
+                bytes.addAndGet(((ByteBuf) msg).readableBytes());
+            }
+            ctx.fireChannelRead(msg);
+        }
+    }
+}
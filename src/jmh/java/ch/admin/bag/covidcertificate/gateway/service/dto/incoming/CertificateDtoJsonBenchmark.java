@@ -0,0 +1,94 @@
+package ch.admin.bag.covidcertificate.gateway.service.dto.incoming;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of the certificate create requests, read from the JSON fixtures next to this class, and of
+ * the create response with a PDF and QR code of typical size. The object mapper is configured like the one of Spring
+ * Boot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateDtoJsonBenchmark {
+    private static final Map<String, Class<? extends CertificateCreateDto>> TYPES = Map.of(
+            "vaccination", VaccinationCertificateCreateDto.class,
+            "vaccination-tourist", VaccinationTouristCertificateCreateDto.class,
+            "test", TestCertificateCreateDto.class,
+            "recovery", RecoveryCertificateCreateDto.class,
+            "recovery-rat", RecoveryRatCertificateCreateDto.class,
+            "antibody", AntibodyCertificateCreateDto.class);
+
+    @Param({"vaccination", "vaccination-tourist", "test", "recovery", "recovery-rat", "antibody"})
+    private String certificateType;
+
+    private ObjectMapper mapper;
+    private Class<? extends CertificateCreateDto> createDtoType;
+    private byte[] createDtoJson;
+    private CertificateCreateDto createDto;
+    private CovidCertificateCreateResponseDto responseDto;
+    private byte[] responseDtoJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        createDtoType = TYPES.get(certificateType);
+        createDtoJson = StreamUtils.copyToByteArray(
+                new ClassPathResource(certificateType + ".json", CertificateDtoJsonBenchmark.class).getInputStream());
+        createDto = mapper.readValue(createDtoJson, createDtoType);
+
+        var random = new Random(42);
+        var pdf = new byte[60_000];
+        var qrCode = new byte[8_000];
+        random.nextBytes(pdf);
+        random.nextBytes(qrCode);
+        responseDto = new CovidCertificateCreateResponseDto(pdf, qrCode, "urn:uvci:01:CH:F0FDABC0D1E1D79F7A5DD1F0", null);
+        responseDtoJson = mapper.writeValueAsBytes(responseDto);
+    }
+
+    @Benchmark
+    public CertificateCreateDto readCreateDto() throws Exception {
+        return mapper.readValue(createDtoJson, createDtoType);
+    }
+
+    @Benchmark
+    public byte[] writeCreateDto() throws Exception {
+        return mapper.writeValueAsBytes(createDto);
+    }
+
+    @Benchmark
+    public CovidCertificateCreateResponseDto readResponseDto() throws Exception {
+        return mapper.readValue(responseDtoJson, CovidCertificateCreateResponseDto.class);
+    }
+
+    @Benchmark
+    public byte[] writeResponseDto() throws Exception {
+        return mapper.writeValueAsBytes(responseDto);
+    }
+}
@@ -0,0 +1,45 @@
+package ch.admin.bag.covidcertificate.gateway.service.util;
+
+import ch.admin.bag.covidcertificate.gateway.error.RestError;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of an error response of the management service to a {@link RestError}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebClientUtilsBenchmark {
+
+    private WebClientResponseException exception;
+
+    @Setup
+    public void setUp() {
+        byte[] body = "{\"errorCode\":451,\"errorMessage\":\"Invalid medicinal product\"}".getBytes(StandardCharsets.UTF_8);
+        exception = WebClientResponseException.create(HttpStatus.BAD_REQUEST.value(), "Bad Request",
+                new HttpHeaders(), body, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public RestError handleWebClientResponseError() {
+        return WebClientUtils.handleWebClientResponseError(exception);
+    }
+}
@@ -6,19 +6,28 @@ import org.apache.http.auth.Credentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
 import org.springframework.ws.transport.http.HttpComponentsMessageSender;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
 
@@ -42,8 +51,20 @@ public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
 
     private int readTimeout = -1;
 
+    private int connectionRequestTimeout = -1;
+
     private int maxConnTotal = 50;
 
+    private int maxConnPerRoute = 50;
+
+    private long connectionTimeToLive = -1;
+
+    private long maxIdleTime = -1;
+
+    private long defaultKeepAlive = -1;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
     private Credentials credentials;
 
     private HttpHost proxyHost;
@@ -52,15 +73,20 @@ public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
     public HttpClient getObject() throws Exception {
         var httpClientBuilder = HttpClientBuilder.create();
         handleInterceptors(httpClientBuilder);
-        handleSSLConnection(httpClientBuilder);
         handleRequestConfig(httpClientBuilder);
         handleProxyConfig(httpClientBuilder);
-        handleHostnameVerifier(httpClientBuilder);
         handleUsernameAndPasswordCredential(httpClientBuilder);
         handleConnectionPoolConfig(httpClientBuilder);
         return httpClientBuilder.build();
     }
 
+    /**
+     * @return the connection pool of the client created by {@link #getObject()}, e.g. to expose its statistics
+     */
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
     @Override
     public Class<HttpClient> getObjectType() {
         return HttpClient.class;
@@ -71,10 +97,11 @@ public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
         return true;
     }
 
-    protected void handleHostnameVerifier(HttpClientBuilder httpClientBuilder) {
+    protected HostnameVerifier getHostnameVerifier() {
         if (allowAllHostnameVerifier) {
-            httpClientBuilder.setHostnameVerifier(SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            return SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER;
         }
+        return SSLConnectionSocketFactory.getDefaultHostnameVerifier();
     }
 
     protected void handleInterceptors(HttpClientBuilder httpClientBuilder) {
@@ -89,8 +116,34 @@ public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
         }
     }
 
-    protected void handleConnectionPoolConfig(HttpClientBuilder httpClientBuilder) {
-        httpClientBuilder.setMaxConnTotal(maxConnTotal);
+    /**
+     * The pool is created here instead of by the builder, so that its statistics are available. Connections are closed
+     * after <code>connectionTimeToLive</code>, after <code>maxIdleTime</code> without use by a background thread that is
+     * stopped when the client is closed, and when the keep-alive time sent by the server or otherwise
+     * <code>defaultKeepAlive</code> has elapsed.
+     */
+    protected void handleConnectionPoolConfig(HttpClientBuilder httpClientBuilder) throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableKeyException, KeyManagementException {
+        var socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(createSSLContext(), getHostnameVerifier()))
+                .build();
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, null, null, null,
+                connectionTimeToLive, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxConnTotal);
+        connectionManager.setDefaultMaxPerRoute(maxConnPerRoute);
+        httpClientBuilder.setConnectionManager(connectionManager);
+        httpClientBuilder.setKeepAliveStrategy(keepAliveStrategy());
+        httpClientBuilder.evictExpiredConnections();
+        if (maxIdleTime > 0) {
+            httpClientBuilder.evictIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+        };
     }
 
     protected void handleProxyConfig(HttpClientBuilder httpClientBuilder) {
@@ -102,12 +155,13 @@ public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
     protected void handleRequestConfig(HttpClientBuilder httpClientBuilder) {
         var requestConfig = RequestConfig.custom()
                 .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
                 .setSocketTimeout(readTimeout)
                 .build();
         httpClientBuilder.setDefaultRequestConfig(requestConfig);
     }
 
-    protected void handleSSLConnection(HttpClientBuilder httpClientBuilder) throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableKeyException, KeyManagementException {
+    protected SSLContext createSSLContext() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableKeyException, KeyManagementException {
         if (this.keystoreLocation != null || this.truststoreLocation != null) {
             var sslContextBuilder = SSLContexts.custom();
             if (this.keystoreLocation != null) {
@@ -118,8 +172,9 @@ public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
                 var truststore = getTruststore();
                 sslContextBuilder.loadTrustMaterial(truststore);
             }
-            httpClientBuilder.setSslcontext(sslContextBuilder.build());
+            return sslContextBuilder.build();
         }
+        return SSLContexts.createDefault();
     }
 
     private KeyStore getTruststore() throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
@@ -190,10 +245,51 @@ public class AdvancedHttpClientFactoryBean implements FactoryBean<HttpClient> {
         this.readTimeout = readTimeout;
     }
 
+    /**
+     * Sets the timeout to wait for a connection from the pool. A value of -1 means <em>never</em> timeout.
+     *
+     * @param connectionRequestTimeout the timeout value in milliseconds
+     */
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
     public void setMaxConnTotal(int maxConnTotal) {
         this.maxConnTotal = maxConnTotal;
     }
 
+    public void setMaxConnPerRoute(int maxConnPerRoute) {
+        this.maxConnPerRoute = maxConnPerRoute;
+    }
+
+    /**
+     * Sets the time after which a connection is closed instead of being reused. A value of -1 means <em>never</em>.
+     *
+     * @param connectionTimeToLive the time to live in milliseconds
+     */
+    public void setConnectionTimeToLive(long connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    /**
+     * Sets the time after which an unused connection is closed in the background. A value of -1 means <em>never</em>.
+     *
+     * @param maxIdleTime the idle time in milliseconds
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Sets the time a connection is kept alive if the server does not send a <code>Keep-Alive</code> header. A value
+     * of -1 means <em>indefinitely</em>.
+     *
+     * @param defaultKeepAlive the keep-alive time in milliseconds
+     */
+    public void setDefaultKeepAlive(long defaultKeepAlive) {
+        this.defaultKeepAlive = defaultKeepAlive;
+    }
+
     public void setCredentials(Credentials credentials) {
         this.credentials = credentials;
     }
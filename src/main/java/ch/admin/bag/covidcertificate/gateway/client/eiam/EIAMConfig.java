@@ -2,6 +2,8 @@ package ch.admin.bag.covidcertificate.gateway.client.eiam;
 
 import ch.admin.bag.covidcertificate.gateway.web.config.ProfileRegistry;
 import io.jsonwebtoken.io.Decoders;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
 import org.apache.http.client.HttpClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -29,6 +31,30 @@ public class EIAMConfig {
     private String keystorePassword;
     @Value("${eiam-admin-service.truststore-password}")
     private String truststorePassword;
+    @Value("${eiam-admin-service.connection.max-total}")
+    private int maxConnTotal;
+    @Value("${eiam-admin-service.connection.max-per-route}")
+    private int maxConnPerRoute;
+    @Value("${eiam-admin-service.connection.connect-timeout}")
+    private int connectTimeout;
+    @Value("${eiam-admin-service.connection.read-timeout}")
+    private int readTimeout;
+    @Value("${eiam-admin-service.connection.connection-request-timeout}")
+    private int connectionRequestTimeout;
+    @Value("${eiam-admin-service.connection.time-to-live}")
+    private long connectionTimeToLive;
+    @Value("${eiam-admin-service.connection.max-idle-time}")
+    private long maxIdleTime;
+    @Value("${eiam-admin-service.connection.default-keep-alive}")
+    private long defaultKeepAlive;
+    @Value("${eiam-admin-service.marshaller-pool-size}")
+    private int marshallerPoolSize;
+    @Value("${eiam-admin-service.validation.request}")
+    private boolean validateRequest;
+    @Value("${eiam-admin-service.validation.response}")
+    private boolean validateResponse;
+    @Value("${eiam-admin-service.validation.sample-rate}")
+    private double validationSampleRate;
 
     @Bean
     public EIAMClient getEIAMClient(
@@ -48,7 +74,7 @@ public class EIAMConfig {
 
     @Bean
     public Jaxb2Marshaller getJaxb2Marshaller() {
-        var marshaller = new Jaxb2Marshaller();
+        var marshaller = new PooledJaxb2Marshaller(marshallerPoolSize);
         marshaller.setContextPath(CONTEXT_PATH);
         return marshaller;
     }
@@ -59,7 +85,7 @@ public class EIAMConfig {
     }
 
     @Bean
-    public HttpClient getHttpClient() throws Exception {
+    public HttpClient getHttpClient(MeterRegistry meterRegistry) throws Exception {
         var httpClientFactory = new AdvancedHttpClientFactoryBean();
         httpClientFactory.setKeystoreType(KEYSTORE_TYPE);
         httpClientFactory.setKeystoreLocation(new ByteArrayResource(Decoders.BASE64.decode(keystore)));
@@ -67,18 +93,28 @@ public class EIAMConfig {
         httpClientFactory.setTruststoreType(TRUSTSTORE_TYPE);
         httpClientFactory.setTruststoreLocation(new ClassPathResource("truststore.jks"));
         httpClientFactory.setTruststorePassword(truststorePassword);
-        httpClientFactory.setMaxConnTotal(10);
-        httpClientFactory.setConnectTimeout(1000);
+        httpClientFactory.setMaxConnTotal(maxConnTotal);
+        httpClientFactory.setMaxConnPerRoute(maxConnPerRoute);
+        httpClientFactory.setConnectTimeout(connectTimeout);
+        httpClientFactory.setReadTimeout(readTimeout);
+        httpClientFactory.setConnectionRequestTimeout(connectionRequestTimeout);
+        httpClientFactory.setConnectionTimeToLive(connectionTimeToLive);
+        httpClientFactory.setMaxIdleTime(maxIdleTime);
+        httpClientFactory.setDefaultKeepAlive(defaultKeepAlive);
         httpClientFactory.setAllowAllHostnameVerifier(true);
-        return httpClientFactory.getObject();
+        var httpClient = httpClientFactory.getObject();
+        // exposed as httpcomponents.httpclient.pool.* with the tag httpclient=eiam-admin-service
+        new PoolingHttpClientConnectionManagerMetricsBinder(httpClientFactory.getConnectionManager(), "eiam-admin-service")
+                .bindTo(meterRegistry);
+        return httpClient;
     }
 
     @Bean
     public PayloadValidatingInterceptor getPayloadValidatingInterceptor() {
-        var interceptor = new PayloadValidatingInterceptor();
+        var interceptor = new SamplingPayloadValidatingInterceptor(validationSampleRate);
         interceptor.setSchema(new ClassPathResource("eiam/nevisidm_servicetypes_v1_43.xsd"));
-        interceptor.setValidateRequest(true);
-        interceptor.setValidateResponse(true);
+        interceptor.setValidateRequest(validateRequest);
+        interceptor.setValidateResponse(validateResponse);
         return interceptor;
     }
 
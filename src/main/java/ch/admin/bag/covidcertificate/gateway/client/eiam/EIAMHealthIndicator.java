@@ -2,28 +2,117 @@ package ch.admin.bag.covidcertificate.gateway.client.eiam;
 
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.QueryClientsResponse;
 import ch.admin.bag.covidcertificate.gateway.web.config.ProfileRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.NestedExceptionUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static net.logstash.logback.argument.StructuredArguments.kv;
 
+/**
+ * Reports the result of the last eIAM AdminService probe. The probe calls <code>queryClients</code> every
+ * <code>probe-interval</code> milliseconds on its own thread, so that calls to the health endpoint do not reach eIAM
+ * and a hanging probe does not delay the scheduled jobs of the application. The result is reported as DOWN if no
+ * probe has completed within <code>max-age-seconds</code>, e.g. because the probes hang. The duration of the probes is
+ * exposed as <code>eiam.health.probe</code>.
+ */
 @Component("eIAMAdminService")
 @Slf4j
 @Profile("!" + ProfileRegistry.IDENTITY_AUTHORIZATION_MOCK)
 @RequiredArgsConstructor
 public class EIAMHealthIndicator implements HealthIndicator {
     private final EIAMClient eiamClient;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${eiam-admin-service.health.max-age-seconds}")
+    private long maxAgeSeconds;
+
+    @Value("${eiam-admin-service.health.probe-interval}")
+    private long probeInterval;
+
+    private ScheduledExecutorService prober;
+
+    private volatile Health lastHealth;
+    private volatile Instant lastProbe;
+    private volatile Instant lastSuccess;
+
+    @PostConstruct
+    public void init() {
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "eiam-health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(() -> {
+            try {
+                probe();
+            } catch (RuntimeException e) {
+                // a failed run would cancel the following probes
+                log.error("Error when probing eIAM AdminService.", e);
+            }
+        }, 0, probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prober.shutdownNow();
+    }
 
     @Override
     public Health health() {
+        Health health = lastHealth;
+        Instant probedAt = lastProbe;
+        if (health == null) {
+            return Health.unknown().withDetail("reason", "eIAM has not been probed yet").build();
+        }
+        Health.Builder builder = Health.status(health.getStatus()).withDetails(health.getDetails());
+        if (probedAt.isBefore(Instant.now().minusSeconds(maxAgeSeconds))) {
+            builder.down().withDetail("reason", "Last probe is older than " + maxAgeSeconds + " seconds");
+        }
+        builder.withDetail("lastProbe", probedAt.toString());
+        if (lastSuccess != null) {
+            builder.withDetail("lastSuccess", lastSuccess.toString());
+        }
+        return builder.build();
+    }
+
+    void probe() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Health health = queryClient();
+        long durationNanos = sample.stop(Timer.builder("eiam.health.probe")
+                .tag("status", health.getStatus().getCode())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+
+        Instant now = Instant.now();
+        if (Status.UP.equals(health.getStatus())) {
+            lastSuccess = now;
+        }
+        lastHealth = Health.status(health.getStatus())
+                .withDetails(health.getDetails())
+                .withDetail("latencyMs", Duration.ofNanos(durationNanos).toMillis())
+                .build();
+        lastProbe = now;
+    }
+
+    private Health queryClient() {
         log.info("Calling eIAM AdminService queryClients. {}", kv("clientName", EIAMConfig.CLIENT_NAME));
         try {
             QueryClientsResponse response = eiamClient.queryClient(EIAMConfig.CLIENT_NAME);
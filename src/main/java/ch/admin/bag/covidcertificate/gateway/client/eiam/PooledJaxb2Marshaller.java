@@ -0,0 +1,77 @@
+package ch.admin.bag.covidcertificate.gateway.client.eiam;
+
+import org.springframework.lang.Nullable;
+import org.springframework.oxm.XmlMappingException;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.oxm.mime.MimeContainer;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * {@link Jaxb2Marshaller} that reuses its JAXB marshallers and unmarshallers instead of creating and configuring new
+ * ones for every SOAP call. JAXB marshallers are not thread-safe, so each instance is used by one call at a time and
+ * returned to a pool of at most <code>poolSize</code> idle instances afterwards. Only the DOM payloads of SAAJ
+ * messages without MTOM are handled from the pool, everything else is passed to {@link Jaxb2Marshaller}.
+ */
+public class PooledJaxb2Marshaller extends Jaxb2Marshaller {
+
+    private final BlockingQueue<Marshaller> marshallers;
+    private final BlockingQueue<Unmarshaller> unmarshallers;
+    private boolean mtomEnabled;
+
+    public PooledJaxb2Marshaller(int poolSize) {
+        this.marshallers = new ArrayBlockingQueue<>(poolSize);
+        this.unmarshallers = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    @Override
+    public void setMtomEnabled(boolean mtomEnabled) {
+        super.setMtomEnabled(mtomEnabled);
+        this.mtomEnabled = mtomEnabled;
+    }
+
+    @Override
+    public void marshal(Object graph, Result result, @Nullable MimeContainer mimeContainer) throws XmlMappingException {
+        if (mtomEnabled || !(result instanceof DOMResult)) {
+            super.marshal(graph, result, mimeContainer);
+            return;
+        }
+        Marshaller marshaller = borrow(marshallers, this::createMarshaller);
+        try {
+            marshaller.marshal(graph, result);
+        } catch (JAXBException ex) {
+            throw convertJaxbException(ex);
+        } finally {
+            marshallers.offer(marshaller);
+        }
+    }
+
+    @Override
+    public Object unmarshal(Source source, @Nullable MimeContainer mimeContainer) throws XmlMappingException {
+        if (mtomEnabled || !(source instanceof DOMSource)) {
+            return super.unmarshal(source, mimeContainer);
+        }
+        Unmarshaller unmarshaller = borrow(unmarshallers, this::createUnmarshaller);
+        try {
+            return unmarshaller.unmarshal(source);
+        } catch (JAXBException ex) {
+            throw convertJaxbException(ex);
+        } finally {
+            unmarshallers.offer(unmarshaller);
+        }
+    }
+
+    private static <T> T borrow(BlockingQueue<T> pool, Supplier<T> factory) {
+        T instance = pool.poll();
+        return instance != null ? instance : factory.get();
+    }
+}
@@ -0,0 +1,39 @@
+package ch.admin.bag.covidcertificate.gateway.client.eiam;
+
+import org.springframework.ws.client.WebServiceClientException;
+import org.springframework.ws.client.support.interceptor.PayloadValidatingInterceptor;
+import org.springframework.ws.context.MessageContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link PayloadValidatingInterceptor} that validates only the given share of the messages, e.g. 0.1 validates every
+ * tenth call on average. Whether requests and responses are validated at all is still set by
+ * {@link #setValidateRequest(boolean)} and {@link #setValidateResponse(boolean)}. The schema is compiled once on
+ * startup by {@link #afterPropertiesSet()}.
+ */
+public class SamplingPayloadValidatingInterceptor extends PayloadValidatingInterceptor {
+
+    private final double sampleRate;
+
+    public SamplingPayloadValidatingInterceptor(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1, but was " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public boolean handleRequest(MessageContext messageContext) throws WebServiceClientException {
+        return !isSampled() || super.handleRequest(messageContext);
+    }
+
+    @Override
+    public boolean handleResponse(MessageContext messageContext) throws WebServiceClientException {
+        return !isSampled() || super.handleResponse(messageContext);
+    }
+
+    private boolean isSampled() {
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
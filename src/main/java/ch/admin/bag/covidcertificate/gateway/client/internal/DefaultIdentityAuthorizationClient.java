@@ -6,18 +6,48 @@ import ch.admin.bag.covidcertificate.gateway.client.eiam.EIAMConfig;
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.Authorization;
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.ProfileState;
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.QueryUsersResponse;
+import ch.admin.bag.covidcertificate.gateway.error.RestError;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
 import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateException;
 import ch.admin.bag.covidcertificate.gateway.web.config.ProfileRegistry;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER_ROLE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.AUTH_IDENTITY;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_FAILURE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_SUCCESS;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.STAGE_EIAM;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.TYPE_NONE;
 import static net.logstash.logback.argument.StructuredArguments.kv;
 
+/**
+ * Authorizes identity based callers against eIAM. The decision for a <code>uuid</code> and <code>idpSource</code> is
+ * cached for <code>positive-ttl-seconds</code> when the user is authorized and for <code>negative-ttl-seconds</code>
+ * when not, concurrent lookups for the same user wait for a single eIAM call. Failing eIAM calls are not cached.
+ * Decisions older than <code>refresh-after-seconds</code> are reloaded by <code>refresh-threads</code> background
+ * threads on the next lookup while the cached decision is returned, so known users do not wait for eIAM.
+ */
 @Service
 @Slf4j
 @Profile("!" + ProfileRegistry.IDENTITY_AUTHORIZATION_MOCK)
@@ -26,7 +56,54 @@ public class DefaultIdentityAuthorizationClient implements IdentityAuthorization
     private static final String ROLE_CREATOR = "9500.GGG-Covidcertificate.CertificateCreator";
     private static final String ROLE_SUPERUSER = "9500.GGG-Covidcertificate.SuperUserCC";
 
+    private static final String CACHE_NAME = "eiam-authorization";
+    private static final AuthorizationDecision AUTHORIZED = new AuthorizationDecision(null);
+
     private final EIAMClient eiamClient;
+    private final MeterRegistry meterRegistry;
+    private final CertificateStageMetrics stageMetrics;
+
+    @Value("${cc-api-gateway-service.identity-authorization.cache.positive-ttl-seconds}")
+    private long positiveTtlSeconds;
+
+    @Value("${cc-api-gateway-service.identity-authorization.cache.negative-ttl-seconds}")
+    private long negativeTtlSeconds;
+
+    @Value("${cc-api-gateway-service.identity-authorization.cache.max-size}")
+    private long maxSize;
+
+    @Value("${cc-api-gateway-service.identity-authorization.cache.refresh-after-seconds}")
+    private long refreshAfterSeconds;
+
+    @Value("${cc-api-gateway-service.identity-authorization.cache.refresh-threads}")
+    private int refreshThreads;
+
+    private LoadingCache<UserKey, AuthorizationDecision> decisionCache;
+    private ExecutorService refreshExecutor;
+    private Timer queryUsersTimer;
+
+    @PostConstruct
+    public void init() {
+        refreshExecutor = Executors.newFixedThreadPool(refreshThreads);
+        var cacheBuilder = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new DecisionExpiry())
+                .executor(refreshExecutor)
+                .recordStats();
+        if (refreshAfterSeconds > 0) {
+            cacheBuilder.refreshAfterWrite(Duration.ofSeconds(refreshAfterSeconds));
+        }
+        decisionCache = cacheBuilder.build(key -> decide(key.uuid, key.idpSource));
+        CaffeineCacheMetrics.monitor(meterRegistry, decisionCache, CACHE_NAME);
+        queryUsersTimer = Timer.builder("cc.eiam.query.users")
+                .description("Latency of the eIAM AdminService queryUsers calls")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
 
     @Override
     public void authorize(String uuid, String idpSource) {
@@ -37,29 +114,43 @@ public class DefaultIdentityAuthorizationClient implements IdentityAuthorization
             log.trace("User info is valid");
         }
 
+        var decision = decisionCache.get(new UserKey(uuid, idpSource));
+        if (decision.getError() != null) {
+            throw new CreateCertificateException(decision.getError());
+        }
+        log.trace("Authorization checked successfully.");
+    }
+
+    private AuthorizationDecision decide(String uuid, String idpSource) {
         QueryUsersResponse queryUsersResponse = queryUser(uuid, idpSource);
         if (checkUserExists(queryUsersResponse)) {
             log.info("User does not exist in eIAM. {} {} {}", kv("uuid", uuid), kv("idpSource", idpSource), kv("clientName", EIAMConfig.CLIENT_NAME));
-            throw new CreateCertificateException(INVALID_IDENTITY_USER);
+            return new AuthorizationDecision(INVALID_IDENTITY_USER);
         } else {
             log.trace("User exists");
         }
         if (!hasUserRoleSuperUserOrCreator(queryUsersResponse)) {
             log.info("User does not have required role in eIAM. {} {} {}", kv("uuid", uuid), kv("idpSource", idpSource), kv("clientName", EIAMConfig.CLIENT_NAME));
-            throw new CreateCertificateException(INVALID_IDENTITY_USER_ROLE);
+            return new AuthorizationDecision(INVALID_IDENTITY_USER_ROLE);
         } else {
             log.trace("User has right roles");
         }
-        log.trace("Authorization checked successfully.");
+        return AUTHORIZED;
     }
 
     private QueryUsersResponse queryUser(String uuid, String idpSource) {
+        long start = System.nanoTime();
+        String outcome = OUTCOME_FAILURE;
         try {
             log.info("Calling eIAM AdminService queryUsers. {} {} {}", kv("uuid", uuid), kv("idpSource", idpSource), kv("clientName", EIAMConfig.CLIENT_NAME));
-            return eiamClient.queryUser(uuid, idpSource, EIAMConfig.CLIENT_NAME);
+            QueryUsersResponse response = queryUsersTimer.record(() -> eiamClient.queryUser(uuid, idpSource, EIAMConfig.CLIENT_NAME));
+            outcome = OUTCOME_SUCCESS;
+            return response;
         } catch (Exception e) {
             log.error("Error when calling eIAM AdminService queryUsers. {} {} {}", kv("uuid", uuid), kv("idpSource", idpSource), kv("clientName", EIAMConfig.CLIENT_NAME), e);
             throw e;
+        } finally {
+            stageMetrics.record(STAGE_EIAM, TYPE_NONE, AUTH_IDENTITY, outcome, start);
         }
     }
 
@@ -88,4 +179,35 @@ public class DefaultIdentityAuthorizationClient implements IdentityAuthorization
         return authorization.getRole().getExtId().equals(ROLE_CREATOR) ||
                 authorization.getRole().getExtId().equals(ROLE_SUPERUSER);
     }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class UserKey {
+        private final String uuid;
+        private final String idpSource;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class AuthorizationDecision {
+        private final RestError error;
+    }
+
+    private class DecisionExpiry implements Expiry<UserKey, AuthorizationDecision> {
+        @Override
+        public long expireAfterCreate(UserKey key, AuthorizationDecision decision, long currentTime) {
+            long ttlSeconds = decision.getError() == null ? positiveTtlSeconds : negativeTtlSeconds;
+            return TimeUnit.SECONDS.toNanos(ttlSeconds);
+        }
+
+        @Override
+        public long expireAfterUpdate(UserKey key, AuthorizationDecision decision, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, decision, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(UserKey key, AuthorizationDecision decision, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
@@ -2,5 +2,10 @@ package ch.admin.bag.covidcertificate.gateway.domain;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 public interface OtpRevocationRepository extends JpaRepository<OtpRevocation, String> {
+
+    List<OtpRevocation> findAllByCreatedAtGreaterThanEqual(LocalDateTime createdAt);
 }
@@ -0,0 +1,49 @@
+package ch.admin.bag.covidcertificate.gateway.domain;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered UUIDs in the layout of UUID version 7: 48 bits of Unix time in milliseconds, the version, a
+ * 12 bit counter, the variant and 62 random bits. Ids generated later sort after earlier ones in PostgreSQL, so new
+ * rows are appended to the right end of the primary key index instead of random leaf pages. The counter keeps the ids
+ * of this JVM strictly increasing within the same millisecond; when it overflows, the time part moves ahead by one
+ * millisecond.
+ * <p>
+ * Use it for event tables with <code>@GeneratedValue(generator = TimeOrderedUuidGenerator.NAME)</code> and
+ * <code>@GenericGenerator(name = TimeOrderedUuidGenerator.NAME, strategy = TimeOrderedUuidGenerator.STRATEGY)</code>,
+ * or call {@link #next()} for ids written by JDBC.
+ */
+public class TimeOrderedUuidGenerator implements IdentifierGenerator {
+
+    public static final String NAME = "time-ordered-uuid";
+    public static final String STRATEGY = "ch.admin.bag.covidcertificate.gateway.domain.TimeOrderedUuidGenerator";
+
+    private static final int COUNTER_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    // time in milliseconds shifted by COUNTER_BITS plus the counter
+    private static final AtomicLong lastTimeAndCounter = new AtomicLong();
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return next();
+    }
+
+    public static UUID next() {
+        long now = System.currentTimeMillis() << COUNTER_BITS;
+        long timeAndCounter = lastTimeAndCounter.accumulateAndGet(now, (last, current) -> Math.max(current, last + 1));
+        long mostSigBits = (timeAndCounter >>> COUNTER_BITS) << 16
+                | VERSION
+                | timeAndCounter & ((1L << COUNTER_BITS) - 1);
+        long leastSigBits = ThreadLocalRandom.current().nextLong() & RANDOM_MASK | VARIANT;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -77,6 +77,12 @@ public class ErrorList {
     public static final String MISSING_RECOVERY_RAT_INFO_JSON = ERROR_CODE_KEY + MISSING_RECOVERY_RAT_INFO_CODE + ","
             + ERROR_MESSAGE_KEY + MISSING_RECOVERY_RAT_INFO_MESSAGE + "}";
 
+    public static final int INVALID_BATCH_SIZE_CODE = 433;
+    public static final String INVALID_BATCH_SIZE_MESSAGE = "Invalid batch! The number of certificates must be between 1 and the maximum batch size.";
+    public static final RestError INVALID_BATCH_SIZE = new RestError(INVALID_BATCH_SIZE_CODE, INVALID_BATCH_SIZE_MESSAGE, HttpStatus.BAD_REQUEST);
+    public static final String INVALID_BATCH_SIZE_JSON = ERROR_CODE_KEY + INVALID_BATCH_SIZE_CODE + ","
+            + ERROR_MESSAGE_KEY + INVALID_BATCH_SIZE_MESSAGE + "}";
+
     // Authorization
     private static final int INVALID_SIGNATURE_CODE = 490;
     private static final String INVALID_SIGNATURE_MESSAGE = "Integrity check failed, the body hash does not match the hash in the header";
@@ -120,6 +126,35 @@ public class ErrorList {
     public static final String INVALID_OTP_LENGTH_JSON = ERROR_CODE_KEY + INVALID_OTP_LENGTH_CODE + ","
             + ERROR_MESSAGE_KEY + INVALID_OTP_LENGTH_MESSAGE + "}";
 
+    // Availability
+    public static final int CREATE_CERTIFICATE_CONCURRENCY_LIMIT_CODE = 498;
+    public static final String CREATE_CERTIFICATE_CONCURRENCY_LIMIT_MESSAGE = "Too many concurrent certificate creations, please retry later";
+    public static final RestError CREATE_CERTIFICATE_CONCURRENCY_LIMIT = new RestError(CREATE_CERTIFICATE_CONCURRENCY_LIMIT_CODE, CREATE_CERTIFICATE_CONCURRENCY_LIMIT_MESSAGE, HttpStatus.SERVICE_UNAVAILABLE);
+    public static final String CREATE_CERTIFICATE_CONCURRENCY_LIMIT_JSON = ERROR_CODE_KEY + CREATE_CERTIFICATE_CONCURRENCY_LIMIT_CODE + ","
+            + ERROR_MESSAGE_KEY + CREATE_CERTIFICATE_CONCURRENCY_LIMIT_MESSAGE + "}";
+
+    public static final int CREATE_CERTIFICATE_TIMEOUT_CODE = 499;
+    public static final String CREATE_CERTIFICATE_TIMEOUT_MESSAGE = "Certificate creation timed out";
+    public static final RestError CREATE_CERTIFICATE_TIMEOUT = new RestError(CREATE_CERTIFICATE_TIMEOUT_CODE, CREATE_CERTIFICATE_TIMEOUT_MESSAGE, HttpStatus.GATEWAY_TIMEOUT);
+    public static final String CREATE_CERTIFICATE_TIMEOUT_JSON = ERROR_CODE_KEY + CREATE_CERTIFICATE_TIMEOUT_CODE + ","
+            + ERROR_MESSAGE_KEY + CREATE_CERTIFICATE_TIMEOUT_MESSAGE + "}";
+
+    public static final int CREATE_CERTIFICATE_FAILED_CODE = 434;
+    public static final String CREATE_CERTIFICATE_FAILED_MESSAGE = "Certificate creation failed";
+    public static final RestError CREATE_CERTIFICATE_FAILED = new RestError(CREATE_CERTIFICATE_FAILED_CODE, CREATE_CERTIFICATE_FAILED_MESSAGE, HttpStatus.INTERNAL_SERVER_ERROR);
+
+    public static final int MANAGEMENT_SERVICE_UNAVAILABLE_CODE = 435;
+    public static final String MANAGEMENT_SERVICE_UNAVAILABLE_MESSAGE = "The certificate service is temporarily unavailable, please retry later";
+    public static final RestError MANAGEMENT_SERVICE_UNAVAILABLE = new RestError(MANAGEMENT_SERVICE_UNAVAILABLE_CODE, MANAGEMENT_SERVICE_UNAVAILABLE_MESSAGE, HttpStatus.SERVICE_UNAVAILABLE);
+    public static final String MANAGEMENT_SERVICE_UNAVAILABLE_JSON = ERROR_CODE_KEY + MANAGEMENT_SERVICE_UNAVAILABLE_CODE + ","
+            + ERROR_MESSAGE_KEY + MANAGEMENT_SERVICE_UNAVAILABLE_MESSAGE + "}";
+
+    public static final int MANAGEMENT_SERVICE_CONCURRENCY_LIMIT_CODE = 436;
+    public static final String MANAGEMENT_SERVICE_CONCURRENCY_LIMIT_MESSAGE = "Too many concurrent requests, please retry later";
+    public static final RestError MANAGEMENT_SERVICE_CONCURRENCY_LIMIT = new RestError(MANAGEMENT_SERVICE_CONCURRENCY_LIMIT_CODE, MANAGEMENT_SERVICE_CONCURRENCY_LIMIT_MESSAGE, HttpStatus.SERVICE_UNAVAILABLE);
+    public static final String MANAGEMENT_SERVICE_CONCURRENCY_LIMIT_JSON = ERROR_CODE_KEY + MANAGEMENT_SERVICE_CONCURRENCY_LIMIT_CODE + ","
+            + ERROR_MESSAGE_KEY + MANAGEMENT_SERVICE_CONCURRENCY_LIMIT_MESSAGE + "}";
+
     // Conflict
     public static final String DUPLICATE_UVCI = ERROR_CODE_KEY + 480 + ","
             + ERROR_MESSAGE_KEY + "Duplicate UVCI.}";
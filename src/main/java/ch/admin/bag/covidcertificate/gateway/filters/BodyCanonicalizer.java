@@ -0,0 +1,39 @@
+package ch.admin.bag.covidcertificate.gateway.filters;
+
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Canonicalizes a request body for the content signature: all line feeds, carriage returns, tabs and spaces are
+ * removed. The body is scanned once and the remaining bytes are passed to {@link Signature#update(byte[], int, int)}
+ * in chunks, without creating intermediate Strings. Working on the UTF-8 bytes is equivalent to working on the
+ * characters, as the removed ASCII bytes never occur inside a multi-byte sequence.
+ */
+public final class BodyCanonicalizer {
+    static final int CHUNK_SIZE = 4096;
+
+    private BodyCanonicalizer() {
+    }
+
+    public static void update(Signature signature, byte[] body) throws SignatureException {
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, Math.max(body.length, 1))];
+        int length = 0;
+        for (byte b : body) {
+            if (isWhitespace(b)) {
+                continue;
+            }
+            chunk[length++] = b;
+            if (length == chunk.length) {
+                signature.update(chunk, 0, length);
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            signature.update(chunk, 0, length);
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == '\n' || b == '\r' || b == '\t' || b == ' ';
+    }
+}
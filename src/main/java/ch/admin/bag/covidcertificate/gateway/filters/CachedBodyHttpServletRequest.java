@@ -28,5 +28,9 @@ public class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
         return new BufferedReader(new InputStreamReader(byteArrayInputStream));
     }
 
+    public byte[] getCachedBody() {
+        return this.cachedBody;
+    }
+
 
 }
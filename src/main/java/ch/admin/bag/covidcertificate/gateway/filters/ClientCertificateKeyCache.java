@@ -0,0 +1,67 @@
+package ch.admin.bag.covidcertificate.gateway.filters;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Caches the public keys of the client certificates sent in the <code>X-Client-Cert</code> header by the SHA-256
+ * fingerprint of the decoded certificate, so that the certificate of a known caller is parsed only once. Hits and
+ * misses (parsed certificates) are exposed as the cache metrics of <code>client-certificates</code>.
+ */
+@Slf4j
+public class ClientCertificateKeyCache {
+    private static final String CACHE_NAME = "client-certificates";
+
+    private final Cache<String, PublicKey> publicKeys;
+
+    public ClientCertificateKeyCache(MeterRegistry meterRegistry, long maxSize, Duration expireAfterAccess) {
+        this.publicKeys = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, publicKeys, CACHE_NAME);
+    }
+
+    public PublicKey getKey(byte[] certificate) throws KeyException {
+        String fingerprint = fingerprint(certificate);
+        PublicKey publicKey = publicKeys.getIfPresent(fingerprint);
+        if (publicKey == null) {
+            publicKey = parseKey(certificate);
+            publicKeys.put(fingerprint, publicKey);
+        }
+        return publicKey;
+    }
+
+    private static String fingerprint(byte[] certificate) throws KeyException {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(certificate));
+        } catch (NoSuchAlgorithmException e) {
+            throw new KeyException(e);
+        }
+    }
+
+    private static PublicKey parseKey(byte[] certificate) throws KeyException {
+        try {
+            CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
+            X509Certificate x509Certificate = (X509Certificate) certFactory.generateCertificate(new ByteArrayInputStream(certificate));
+            return x509Certificate.getPublicKey();
+        } catch (Exception e) {
+            log.warn("Unable to create public key from header", e);
+            throw new KeyException(e);
+        }
+    }
+}
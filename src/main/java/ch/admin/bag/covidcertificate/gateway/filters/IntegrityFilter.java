@@ -1,6 +1,7 @@
 package ch.admin.bag.covidcertificate.gateway.filters;
 
 import ch.admin.bag.covidcertificate.gateway.error.RestError;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,20 +12,18 @@ import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyException;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 import java.util.Base64;
-import java.util.stream.Collectors;
 
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_SIGNATURE;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.SIGNATURE_PARSE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.AUTH_NONE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_FAILURE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_SUCCESS;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.STAGE_INTEGRITY;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -32,20 +31,24 @@ public class IntegrityFilter extends OncePerRequestFilter {
     public static final String HEADER_KEY_NAME = "X-Client-Cert";
     public static final String HEADER_HASH_NAME = "X-Signature";
     private final ObjectMapper mapper;
+    private final ClientCertificateKeyCache clientCertificateKeyCache;
+    private final CertificateStageMetrics stageMetrics;
 
-    private static PublicKey getKey(byte[] key) throws KeyException {
+    private boolean checkIntegrityTimed(CachedBodyHttpServletRequest request) throws SignatureParseException {
+        long start = System.nanoTime();
+        String outcome = OUTCOME_FAILURE;
         try {
-            CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-            InputStream inputStream = new ByteArrayInputStream(key);
-            X509Certificate certificate = (X509Certificate) certFactory.generateCertificate(inputStream);
-            return certificate.getPublicKey();
-        } catch (Exception e) {
-            log.warn("Unable to create public key from header", e);
-            throw new KeyException(e);
+            boolean valid = checkIntegrity(request);
+            if (valid) {
+                outcome = OUTCOME_SUCCESS;
+            }
+            return valid;
+        } finally {
+            stageMetrics.record(STAGE_INTEGRITY, CertificateStageMetrics.typeOfPath(request.getRequestURI()), AUTH_NONE, outcome, start);
         }
     }
 
-    private static boolean checkIntegrity(CachedBodyHttpServletRequest request) throws SignatureParseException {
+    private boolean checkIntegrity(CachedBodyHttpServletRequest request) throws SignatureParseException {
         Base64.Decoder decoder = Base64.getDecoder();
         String signaturePublicKey = request.getHeader(HEADER_KEY_NAME);
         String signatureHash = request.getHeader(HEADER_HASH_NAME);
@@ -55,12 +58,11 @@ public class IntegrityFilter extends OncePerRequestFilter {
                 byte[] decodedPublicKey = decoder.decode(signaturePublicKey.getBytes(StandardCharsets.UTF_8));
                 byte[] decodedHash = decoder.decode(signatureHash.getBytes(StandardCharsets.UTF_8));
 
-                String body = request.getReader().lines().collect(Collectors.joining()).replaceAll("[\\n\\r\\t ]", "");
-                PublicKey publicKey = getKey(decodedPublicKey);
+                PublicKey publicKey = clientCertificateKeyCache.getKey(decodedPublicKey);
 
                 Signature signature = Signature.getInstance("SHA256withRSA");
                 signature.initVerify(publicKey);
-                signature.update(body.getBytes());
+                BodyCanonicalizer.update(signature, request.getCachedBody());
 
                 return signature.verify(decodedHash);
             } catch (Exception e) {
@@ -77,7 +79,7 @@ public class IntegrityFilter extends OncePerRequestFilter {
         CachedBodyHttpServletRequest wrappedRequest = new CachedBodyHttpServletRequest(httpServletRequest);
         RestError restError = null;
         try {
-            if (checkIntegrity(wrappedRequest)) {
+            if (checkIntegrityTimed(wrappedRequest)) {
                 log.info("Integrity check successful, forwarding request");
                 filterChain.doFilter(wrappedRequest, httpServletResponse);
             } else {
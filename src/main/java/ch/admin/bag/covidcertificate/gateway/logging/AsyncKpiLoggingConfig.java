@@ -0,0 +1,116 @@
+package ch.admin.bag.covidcertificate.gateway.logging;
+
+import ch.admin.bag.covidcertificate.gateway.service.BearerTokenValidationService;
+import ch.admin.bag.covidcertificate.gateway.web.config.CustomHeaderAuthenticationFilter;
+import ch.admin.bag.covidcertificate.gateway.web.controller.CertificateCreationKpiLogger;
+import ch.admin.bag.covidcertificate.gateway.web.controller.CovidCertificateRevocationController;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Writes the events of the loggers of the classes that log <code>kpi:</code> and <code>sec-kpi:</code> events
+ * asynchronously to the appenders of the root logger. The events keep the class name as <code>logger_name</code>. All
+ * events of these loggers are queued, not only the KPI events. The appenders are attached here instead of in the
+ * logback configuration, as that is provided by <code>cc-backend-logging</code>. Each root appender gets its own
+ * bounded queue per logger; events that do not fit are dropped and counted as <code>cc.kpi.log.dropped</code>.
+ */
+@Configuration
+@Slf4j
+@RequiredArgsConstructor
+public class AsyncKpiLoggingConfig {
+
+    static final List<Class<?>> KPI_LOGGING_CLASSES = List.of(
+            CustomHeaderAuthenticationFilter.class,
+            CertificateCreationKpiLogger.class,
+            CovidCertificateRevocationController.class,
+            BearerTokenValidationService.class);
+    private static final String METRIC_PREFIX = "cc.kpi.log.";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${cc-api-gateway-service.kpi.log.queue-size}")
+    private int queueSize;
+
+    @Value("${cc-api-gateway-service.kpi.log.max-flush-time}")
+    private int maxFlushTime;
+
+    private final List<DroppingAsyncAppender> appenders = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+            log.warn("KPI events are logged synchronously, logback is not the logging backend.");
+            return;
+        }
+        var loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        var rootAppenders = new ArrayList<Appender<ILoggingEvent>>();
+        loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).iteratorForAppenders().forEachRemaining(rootAppenders::add);
+
+        for (Class<?> kpiLoggingClass : KPI_LOGGING_CLASSES) {
+            var loggerName = kpiLoggingClass.getName();
+            var logger = loggerContext.getLogger(loggerName);
+            for (var rootAppender : rootAppenders) {
+                var appender = new DroppingAsyncAppender();
+                appender.setContext(loggerContext);
+                appender.setName("ASYNC-" + loggerName + "-" + rootAppender.getName());
+                appender.setQueueSize(queueSize);
+                appender.setMaxFlushTime(maxFlushTime);
+                appender.addAppender(rootAppender);
+                appender.start();
+                logger.addAppender(appender);
+                appenders.add(appender);
+                registerMetrics(loggerName, rootAppender.getName(), appender);
+            }
+            logger.setAdditive(rootAppenders.isEmpty());
+        }
+        log.info("KPI events are logged asynchronously. {} {}", kv("appenders", appenders.size()), kv("queueSize", queueSize));
+    }
+
+    /**
+     * Writes the queued events, waiting at most <code>max-flush-time</code> per appender. Later events are logged
+     * synchronously by the root appenders.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (appenders.isEmpty()) {
+            return;
+        }
+        var loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        for (Class<?> kpiLoggingClass : KPI_LOGGING_CLASSES) {
+            var logger = loggerContext.getLogger(kpiLoggingClass);
+            logger.setAdditive(true);
+            appenders.forEach(logger::detachAppender);
+        }
+        appenders.forEach(DroppingAsyncAppender::stop);
+        appenders.clear();
+    }
+
+    private void registerMetrics(String loggerName, String appenderName, DroppingAsyncAppender appender) {
+        FunctionCounter.builder(METRIC_PREFIX + "dropped", appender, DroppingAsyncAppender::getDroppedCount)
+                .description("KPI log events dropped because the queue of the appender was full")
+                .tag("logger", loggerName)
+                .tag("appender", appenderName)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "queue.size", appender, DroppingAsyncAppender::getNumberOfElementsInQueue)
+                .tag("logger", loggerName)
+                .tag("appender", appenderName)
+                .register(meterRegistry);
+    }
+}
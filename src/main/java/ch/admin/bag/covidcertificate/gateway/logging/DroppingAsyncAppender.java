@@ -0,0 +1,32 @@
+package ch.admin.bag.covidcertificate.gateway.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous appender that never blocks the logging thread. Events are only discarded if the queue is full, in
+ * which case they are counted instead of waiting for the worker.
+ */
+public class DroppingAsyncAppender extends AsyncAppender {
+
+    private final LongAdder dropped = new LongAdder();
+
+    public DroppingAsyncAppender() {
+        // events are discarded below a remaining capacity of one, i.e. only if the queue is full
+        setDiscardingThreshold(1);
+        setNeverBlock(true);
+        setIncludeCallerData(false);
+    }
+
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        dropped.increment();
+        return true;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,67 @@
+package ch.admin.bag.covidcertificate.gateway.logging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import net.logstash.logback.argument.StructuredArgument;
+import net.logstash.logback.argument.StructuredArguments;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Arguments of the <code>kpi:</code> and <code>sec-kpi:</code> events. The events are logged by the loggers of the
+ * classes in {@link AsyncKpiLoggingConfig#KPI_LOGGING_CLASSES}, which write through bounded asynchronous appenders.
+ * String values are capped at {@link #MAX_VALUE_LENGTH} characters.
+ */
+public final class KpiLog {
+
+    static final int MAX_VALUE_LENGTH = 256;
+    static final String TRUNCATED_SUFFIX = "...";
+
+    private KpiLog() {
+    }
+
+    public static StructuredArgument kv(String key, Object value) {
+        return StructuredArguments.kv(key, cap(value));
+    }
+
+    /**
+     * Same as {@link #kv(String, Object)}, but the value is only computed if the event is logged, i.e. not at all if
+     * the level of the logger is disabled.
+     */
+    public static StructuredArgument lazyKv(String key, Supplier<?> value) {
+        return new LazyArgument(() -> kv(key, value.get()));
+    }
+
+    static Object cap(Object value) {
+        if (value instanceof String && ((String) value).length() > MAX_VALUE_LENGTH) {
+            return ((String) value).substring(0, MAX_VALUE_LENGTH - TRUNCATED_SUFFIX.length()) + TRUNCATED_SUFFIX;
+        }
+        return value;
+    }
+
+    private static final class LazyArgument implements StructuredArgument {
+        private final Supplier<StructuredArgument> supplier;
+        private volatile StructuredArgument argument;
+
+        private LazyArgument(Supplier<StructuredArgument> supplier) {
+            this.supplier = supplier;
+        }
+
+        private StructuredArgument get() {
+            if (argument == null) {
+                argument = supplier.get();
+            }
+            return argument;
+        }
+
+        @Override
+        public void writeTo(JsonGenerator generator) throws IOException {
+            get().writeTo(generator);
+        }
+
+        @Override
+        public String toString() {
+            return get().toString();
+        }
+    }
+}
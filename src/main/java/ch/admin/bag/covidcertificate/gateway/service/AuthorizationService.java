@@ -11,6 +11,12 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.AUTH_IDENTITY;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.AUTH_OTP;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_FAILURE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_SUCCESS;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.STAGE_AUTHORIZATION;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -18,22 +24,34 @@ public class AuthorizationService {
 
     private final BearerTokenValidationService bearerTokenValidationService;
     private final IdentityAuthorizationClient identityAuthorizationClient;
+    private final CertificateStageMetrics stageMetrics;
     @Value("#{'${allowed-common-names-for-identity}'.split(',')}")
     private List<String> allowedCommonNamesForIdentity;
 
     public String validateAndGetId(DtoWithAuthorization dtoWithAuthorization, String ipAddress) throws InvalidBearerTokenException {
-        var commonName = ((CustomHeaderAuthenticationToken) SecurityContextHolder.getContext().getAuthentication()).getId();
-        if (allowedCommonNamesForIdentity.contains(commonName)) {
-            log.trace("Common name is part of configured list");
-            if (dtoWithAuthorization.getIdentity() != null) {
-                log.trace("Identity exists, checking authorisation");
-                identityAuthorizationClient.authorize(dtoWithAuthorization.getIdentity().getUuid(), dtoWithAuthorization.getIdentity().getIdpSource());
-                return dtoWithAuthorization.getIdentity().getUuid();
+        long start = System.nanoTime();
+        String auth = AUTH_OTP;
+        String outcome = OUTCOME_FAILURE;
+        try {
+            var commonName = ((CustomHeaderAuthenticationToken) SecurityContextHolder.getContext().getAuthentication()).getId();
+            if (allowedCommonNamesForIdentity.contains(commonName)) {
+                log.trace("Common name is part of configured list");
+                if (dtoWithAuthorization.getIdentity() != null) {
+                    log.trace("Identity exists, checking authorisation");
+                    auth = AUTH_IDENTITY;
+                    identityAuthorizationClient.authorize(dtoWithAuthorization.getIdentity().getUuid(), dtoWithAuthorization.getIdentity().getIdpSource());
+                    outcome = OUTCOME_SUCCESS;
+                    return dtoWithAuthorization.getIdentity().getUuid();
+                }
+            } else {
+                log.trace("Checking access via token.");
             }
-        } else {
-            log.trace("Checking access via token.");
+            String userExtId = bearerTokenValidationService.validate(dtoWithAuthorization.getOtp(), ipAddress);
+            outcome = OUTCOME_SUCCESS;
+            return userExtId;
+        } finally {
+            stageMetrics.record(STAGE_AUTHORIZATION, CertificateStageMetrics.typeOfCurrentRequest(), auth, outcome, start);
         }
-        return bearerTokenValidationService.validate(dtoWithAuthorization.getOtp(), ipAddress);
     }
 
 }
@@ -19,7 +19,8 @@ import java.time.LocalDateTime;
 
 import static ch.admin.bag.covidcertificate.gateway.Constants.*;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.*;
-import static net.logstash.logback.argument.StructuredArguments.kv;
+import static ch.admin.bag.covidcertificate.gateway.logging.KpiLog.kv;
+import static ch.admin.bag.covidcertificate.gateway.logging.KpiLog.lazyKv;
 
 @Component
 @Slf4j
@@ -80,7 +81,7 @@ public class BearerTokenValidationService {
             log.debug("Found Claims in JWT scope {}, userExtId {}, idpSource {}", scope, userExtId, idpSource);
 
             String jti = claimsJws.getBody().getId();
-            if (isRevoked(jti)) {
+            if (otpRevocationService.isRevoked(jti)) {
                 log.warn("Call with revoked otp with jti {}", jti);
                 throw new InvalidBearerTokenException(INVALID_BEARER);
             }
@@ -128,15 +129,9 @@ public class BearerTokenValidationService {
         }
     }
 
-    private boolean isRevoked(String jti) {
-        return otpRevocationService.getOtpRevocations()
-                .stream()
-                .anyMatch(otpRevocation -> otpRevocation.getJti().equals(jti));
-    }
-
     private void logSecKPI(String ipAddress, Jws<Claims> claimsJws, String userExtId, String idpSource, String jti) {
         log.info("sec-kpi: {} {} {} {} {} {} {}",
-                kv(KPI_TIMESTAMP_KEY, LocalDateTime.now().format(LOG_FORMAT)),
+                lazyKv(KPI_TIMESTAMP_KEY, () -> LocalDateTime.now().format(LOG_FORMAT)),
                 kv(KPI_CREATE_CERTIFICATE_TYPE, KPI_SYSTEM_API),
                 kv(SEC_KPI_OTP_JWT_ID, jti),
                 kv(SEC_KPI_OTP_TYPE, claimsJws.getBody().get(OTP_CLAIM_KEY, String.class)),
@@ -0,0 +1,138 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_ANTIBODY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_RECOVERY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_RECOVERY_RAT;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_TEST;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION_TOURIST;
+
+/**
+ * Durations of the stages of a certificate request, published as the timer <code>cc.certificate.stage</code> with the
+ * tags <code>stage</code>, <code>type</code> (the KPI type of the certificate, with the suffix <code>-batch</code> for
+ * the batch endpoints, or <code>none</code>), <code>auth</code>
+ * (<code>otp</code>, <code>identity</code> or <code>none</code>) and <code>outcome</code>. The histogram buckets are
+ * the configured service level objectives. A timer is registered once per combination of tags, later recordings only
+ * look it up.
+ */
+public class CertificateStageMetrics {
+
+    public static final String STAGE_INTEGRITY = "integrity";
+    public static final String STAGE_AUTHORIZATION = "authorization";
+    public static final String STAGE_EIAM = "eiam";
+    public static final String STAGE_MANAGEMENT_SERVICE = "management-service";
+    public static final String STAGE_KPI = "kpi";
+
+    public static final String AUTH_OTP = "otp";
+    public static final String AUTH_IDENTITY = "identity";
+    public static final String AUTH_NONE = "none";
+
+    public static final String TYPE_NONE = "none";
+    public static final String TYPE_BATCH_SUFFIX = "-batch";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_FAILURE = "failure";
+
+    static final String METRIC_NAME = "cc.certificate.stage";
+    private static final String BATCH_PATH_SEGMENT = "/batch";
+
+    private static final Map<String, String> TYPE_BY_PATH_SEGMENT = Map.of(
+            "vaccination", KPI_TYPE_VACCINATION,
+            "vaccination-tourist", KPI_TYPE_VACCINATION_TOURIST,
+            "test", KPI_TYPE_TEST,
+            "recovery", KPI_TYPE_RECOVERY,
+            "recovery-rat", KPI_TYPE_RECOVERY_RAT,
+            "antibody", KPI_TYPE_ANTIBODY);
+
+    private final MeterRegistry meterRegistry;
+    private final Duration[] serviceLevelObjectives;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public CertificateStageMetrics(MeterRegistry meterRegistry, List<Duration> serviceLevelObjectives) {
+        this.meterRegistry = meterRegistry;
+        this.serviceLevelObjectives = serviceLevelObjectives.toArray(new Duration[0]);
+    }
+
+    /**
+     * @param startNanos the start of the stage as returned by {@link System#nanoTime()}
+     */
+    public void record(String stage, String type, String auth, String outcome, long startNanos) {
+        timer(stage, type, auth, outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time from the subscription to the given {@link Mono} until it completes or fails. Cancelled calls are
+     * not recorded.
+     */
+    public <T> Mono<T> time(String stage, String type, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono
+                    .doOnSuccess(value -> record(stage, type, AUTH_NONE, OUTCOME_SUCCESS, start))
+                    .doOnError(e -> record(stage, type, AUTH_NONE, OUTCOME_FAILURE, start));
+        });
+    }
+
+    /**
+     * @return the KPI type of the certificate created by the given path, e.g. <code>v</code> for
+     * <code>/api/v1/covidcertificate/vaccination</code> and <code>v-batch</code> for
+     * <code>/api/v1/covidcertificate/batch/vaccination</code>, or <code>none</code>
+     */
+    public static String typeOfPath(String path) {
+        if (path == null) {
+            return TYPE_NONE;
+        }
+        int lastSlash = path.lastIndexOf('/');
+        String type = TYPE_BY_PATH_SEGMENT.get(path.substring(lastSlash + 1));
+        if (type == null) {
+            return TYPE_NONE;
+        }
+        int batchStart = lastSlash - BATCH_PATH_SEGMENT.length();
+        return batchStart >= 0 && path.startsWith(BATCH_PATH_SEGMENT, batchStart) ? type + TYPE_BATCH_SUFFIX : type;
+    }
+
+    /**
+     * @return the KPI type of the certificate created by the request bound to the calling thread, or <code>none</code>
+     */
+    public static String typeOfCurrentRequest() {
+        var requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes instanceof ServletRequestAttributes) {
+            return typeOfPath(((ServletRequestAttributes) requestAttributes).getRequest().getRequestURI());
+        }
+        return TYPE_NONE;
+    }
+
+    private Timer timer(String stage, String type, String auth, String outcome) {
+        return timers.computeIfAbsent(new TimerKey(stage, type, auth, outcome), key -> Timer.builder(METRIC_NAME)
+                .description("Duration of the stages of the certificate requests")
+                .tag("stage", stage)
+                .tag("type", type)
+                .tag("auth", auth)
+                .tag("outcome", outcome)
+                .serviceLevelObjectives(serviceLevelObjectives)
+                .register(meterRegistry));
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class TimerKey {
+        private final String stage;
+        private final String type;
+        private final String auth;
+        private final String outcome;
+    }
+}
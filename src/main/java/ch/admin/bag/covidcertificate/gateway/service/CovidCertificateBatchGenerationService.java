@@ -0,0 +1,136 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import ch.admin.bag.covidcertificate.gateway.error.RestError;
+import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateException;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateBatchCreateResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateBatchItemResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_FAILED;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_BATCH_SIZE;
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Creates the certificates of a batch with at most <code>concurrency</code> calls to the management service in flight.
+ * The result of every certificate is returned at the index of its request, a failed certificate does not fail the
+ * other certificates of the batch. The slowest possible batch, <code>max-size / concurrency</code> rounds of calls that
+ * each take <code>timeout-seconds</code>, must end before the async request times out, as certificates that are
+ * created after the timeout are lost to the caller. This is checked on startup.
+ */
+@Service
+@Slf4j
+public class CovidCertificateBatchGenerationService {
+
+    @Value("${cc-api-gateway-service.certificate-creation.batch.max-size}")
+    private int maxSize;
+
+    @Value("${cc-api-gateway-service.certificate-creation.batch.concurrency}")
+    private int concurrency;
+
+    @Value("${cc-api-gateway-service.certificate-creation.timeout-seconds}")
+    private long timeoutSeconds;
+
+    @Value("${spring.mvc.async.request-timeout}")
+    private Duration asyncRequestTimeout;
+
+    @PostConstruct
+    public void init() {
+        long rounds = (maxSize + concurrency - 1) / concurrency;
+        var batchTimeout = Duration.ofSeconds(rounds * timeoutSeconds);
+        if (batchTimeout.compareTo(asyncRequestTimeout) >= 0) {
+            throw new IllegalStateException("A batch of " + maxSize + " certificates with concurrency " + concurrency +
+                    " may take " + batchTimeout + ", which is not shorter than spring.mvc.async.request-timeout " +
+                    asyncRequestTimeout);
+        }
+    }
+
+    /**
+     * Creates the certificates and returns all results in the order of the request.
+     *
+     * @param createDtos the certificates to create
+     * @param create     validates a certificate and returns the deferred call to the management service
+     * @param onCreated  called for every created certificate, e.g. to log the KPI
+     */
+    public <T extends CertificateCreateDto> Mono<CertificateBatchCreateResponseDto> createCovidCertificates(
+            List<T> createDtos,
+            Function<T, Mono<CovidCertificateCreateResponseDto>> create,
+            BiConsumer<T, CovidCertificateCreateResponseDto> onCreated) {
+        return Flux.fromIterable(prepareItems(createDtos, create, onCreated))
+                .flatMapSequential(Function.identity(), concurrency)
+                .collectList()
+                .map(CertificateBatchCreateResponseDto::new);
+    }
+
+    /**
+     * Creates the certificates and emits every result as soon as it is available, so that the caller can write it to
+     * the response without holding the whole batch. The results are emitted in the order of completion, the index
+     * identifies the certificate of the request.
+     *
+     * @param createDtos the certificates to create
+     * @param create     validates a certificate and returns the deferred call to the management service
+     * @param onCreated  called for every created certificate, e.g. to log the KPI
+     */
+    public <T extends CertificateCreateDto> Flux<CertificateBatchItemResponseDto> streamCovidCertificates(
+            List<T> createDtos,
+            Function<T, Mono<CovidCertificateCreateResponseDto>> create,
+            BiConsumer<T, CovidCertificateCreateResponseDto> onCreated) {
+        return Flux.fromIterable(prepareItems(createDtos, create, onCreated))
+                .flatMap(Function.identity(), concurrency);
+    }
+
+    private <T extends CertificateCreateDto> List<Mono<CertificateBatchItemResponseDto>> prepareItems(
+            List<T> createDtos,
+            Function<T, Mono<CovidCertificateCreateResponseDto>> create,
+            BiConsumer<T, CovidCertificateCreateResponseDto> onCreated) {
+        if (createDtos == null || createDtos.isEmpty() || createDtos.size() > maxSize) {
+            throw new CreateCertificateException(INVALID_BATCH_SIZE);
+        }
+        log.debug("Creating batch of certificates {} {}", kv("size", createDtos.size()), kv("concurrency", concurrency));
+
+        // The calls are prepared on the calling thread, as the system source is resolved from its security context.
+        List<Mono<CertificateBatchItemResponseDto>> items = new ArrayList<>(createDtos.size());
+        for (int index = 0; index < createDtos.size(); index++) {
+            items.add(createItem(index, createDtos.get(index), create, onCreated));
+        }
+        return items;
+    }
+
+    private <T extends CertificateCreateDto> Mono<CertificateBatchItemResponseDto> createItem(
+            int index,
+            T createDto,
+            Function<T, Mono<CovidCertificateCreateResponseDto>> create,
+            BiConsumer<T, CovidCertificateCreateResponseDto> onCreated) {
+        Mono<CovidCertificateCreateResponseDto> certificate;
+        try {
+            certificate = create.apply(createDto);
+        } catch (CreateCertificateException e) {
+            return Mono.just(failed(index, e.getError()));
+        }
+        return certificate
+                .doOnNext(createdCertificate -> onCreated.accept(createDto, createdCertificate))
+                .map(createdCertificate -> new CertificateBatchItemResponseDto(index, createdCertificate, null))
+                .onErrorResume(CreateCertificateException.class, e -> Mono.just(failed(index, e.getError())))
+                .onErrorResume(e -> {
+                    log.error("Exception during creation of batch item {}", kv("index", index), e);
+                    return Mono.just(failed(index, CREATE_CERTIFICATE_FAILED));
+                });
+    }
+
+    private static CertificateBatchItemResponseDto failed(int index, RestError error) {
+        log.warn("Creation of batch item failed {} {}", kv("index", index), kv("error", error));
+        return new CertificateBatchItemResponseDto(index, null, error);
+    }
+}
@@ -5,18 +5,34 @@ import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateExcept
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.*;
 import ch.admin.bag.covidcertificate.gateway.service.util.WebClientUtils;
 import ch.admin.bag.covidcertificate.gateway.web.config.CustomHeaderAuthenticationToken;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.List;
-
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_CONCURRENCY_LIMIT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_TIMEOUT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.STAGE_MANAGEMENT_SERVICE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.TYPE_NONE;
 import static net.logstash.logback.argument.StructuredArguments.kv;
 
 @Service
@@ -33,36 +49,160 @@ public class CovidCertificateGenerationService {
     @Value("#{'${allowed-common-names-for-system-source}'.split(',')}")
     private List<String> allowedCommonNamesForSystemSource;
 
+    @Value("${cc-api-gateway-service.certificate-creation.timeout-seconds}")
+    private long timeoutSeconds;
+
+    @Value("${cc-api-gateway-service.certificate-creation.max-concurrent-requests}")
+    private int maxConcurrentRequests;
+
     private final WebClient defaultWebClient;
+    private final CircuitBreaker managementServiceCircuitBreaker;
+    private final CertificateStageMetrics stageMetrics;
 
-    public CovidCertificateCreateResponseDto createCovidCertificate(TestCertificateCreateDto createDto) {
+    private Semaphore concurrencyLimit;
+
+    @PostConstruct
+    public void init() {
+        concurrencyLimit = new Semaphore(maxConcurrentRequests);
+    }
+
+    public Mono<CovidCertificateCreateResponseDto> createCovidCertificate(TestCertificateCreateDto createDto) {
         return createCovidCertificate(createDto, "test");
     }
 
-    public CovidCertificateCreateResponseDto createCovidCertificate(RecoveryCertificateCreateDto createDto) {
+    public Mono<CovidCertificateCreateResponseDto> createCovidCertificate(RecoveryCertificateCreateDto createDto) {
         return createCovidCertificate(createDto, "recovery");
     }
 
-    public CovidCertificateCreateResponseDto createCovidCertificate(RecoveryRatCertificateCreateDto createDto) {
+    public Mono<CovidCertificateCreateResponseDto> createCovidCertificate(RecoveryRatCertificateCreateDto createDto) {
         return createCovidCertificate(createDto, "recovery-rat");
     }
 
-    public CovidCertificateCreateResponseDto createCovidCertificate(VaccinationCertificateCreateDto createDto) {
+    public Mono<CovidCertificateCreateResponseDto> createCovidCertificate(VaccinationCertificateCreateDto createDto) {
         return createCovidCertificate(createDto, "vaccination");
     }
 
-    public CovidCertificateCreateResponseDto createCovidCertificate(VaccinationTouristCertificateCreateDto createDto) {
+    public Mono<CovidCertificateCreateResponseDto> createCovidCertificate(VaccinationTouristCertificateCreateDto createDto) {
         return createCovidCertificate(createDto, "vaccination-tourist");
     }
 
-    public CovidCertificateCreateResponseDto createCovidCertificate(AntibodyCertificateCreateDto createDto) {
+    public Mono<CovidCertificateCreateResponseDto> createCovidCertificate(AntibodyCertificateCreateDto createDto) {
         return createCovidCertificate(createDto, "antibody");
     }
 
-    private CovidCertificateCreateResponseDto createCovidCertificate(CertificateCreateDto createDto, String resourcePath) {
+    public Mono<Flux<DataBuffer>> streamCovidCertificate(TestCertificateCreateDto createDto) {
+        return streamCovidCertificate(createDto, "test");
+    }
+
+    public Mono<Flux<DataBuffer>> streamCovidCertificate(RecoveryCertificateCreateDto createDto) {
+        return streamCovidCertificate(createDto, "recovery");
+    }
+
+    public Mono<Flux<DataBuffer>> streamCovidCertificate(RecoveryRatCertificateCreateDto createDto) {
+        return streamCovidCertificate(createDto, "recovery-rat");
+    }
+
+    public Mono<Flux<DataBuffer>> streamCovidCertificate(VaccinationCertificateCreateDto createDto) {
+        return streamCovidCertificate(createDto, "vaccination");
+    }
+
+    public Mono<Flux<DataBuffer>> streamCovidCertificate(VaccinationTouristCertificateCreateDto createDto) {
+        return streamCovidCertificate(createDto, "vaccination-tourist");
+    }
+
+    public Mono<Flux<DataBuffer>> streamCovidCertificate(AntibodyCertificateCreateDto createDto) {
+        return streamCovidCertificate(createDto, "antibody");
+    }
+
+    /**
+     * Creates the certificate in the management service without blocking the calling thread. The system source is
+     * resolved eagerly, as the security context is bound to the calling thread. At most
+     * <code>max-concurrent-requests</code> calls are in flight, further calls fail immediately with
+     * {@link ch.admin.bag.covidcertificate.gateway.error.ErrorList#CREATE_CERTIFICATE_CONCURRENCY_LIMIT}. While the
+     * circuit breaker of the management service is open, calls fail immediately with
+     * {@link ch.admin.bag.covidcertificate.gateway.error.ErrorList#MANAGEMENT_SERVICE_UNAVAILABLE}.
+     */
+    private Mono<CovidCertificateCreateResponseDto> createCovidCertificate(CertificateCreateDto createDto, String resourcePath) {
+        final var uri = getUri(resourcePath);
+        setSystemSource(createDto);
+
+        Mono<CovidCertificateCreateResponseDto> call = Mono.defer(() -> {
+                    if (!concurrencyLimit.tryAcquire()) {
+                        return Mono.error(concurrencyLimitReached());
+                    }
+                    return defaultWebClient.post()
+                            .uri(uri)
+                            .body(Mono.just(createDto), createDto.getClass())
+                            .retrieve()
+                            .bodyToMono(CovidCertificateCreateResponseDto.class)
+                            .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
+                            .timeout(Duration.ofSeconds(timeoutSeconds))
+                            .transformDeferred(CircuitBreakerOperator.of(managementServiceCircuitBreaker))
+                            .doFinally(signalType -> concurrencyLimit.release());
+                })
+                .doOnNext(response -> log.trace("CovidCertificateGenerationService Response: {}", response))
+                .onErrorMap(WebClientResponseException.class, this::toCreateCertificateException)
+                .onErrorMap(TimeoutException.class, this::toCreateCertificateException)
+                .onErrorMap(CallNotPermittedException.class, this::toCreateCertificateException);
+        return stageMetrics.time(STAGE_MANAGEMENT_SERVICE, stageType(resourcePath), call);
+    }
+
+    /**
+     * Same as {@link #createCovidCertificate(CertificateCreateDto, String)}, but the response body of the management
+     * service is not deserialized. The returned {@link Mono} completes as soon as the response status and headers are
+     * received, the body is emitted as received. The caller must subscribe to the body and release its buffers; the
+     * concurrency limit is released when the body completes. The circuit breaker records the outcome of the response
+     * status, errors while reading the body are not recorded. The same applies to the stage timer.
+     */
+    private Mono<Flux<DataBuffer>> streamCovidCertificate(CertificateCreateDto createDto, String resourcePath) {
+        final var uri = getUri(resourcePath);
+        setSystemSource(createDto);
+
+        Mono<Flux<DataBuffer>> call = Mono.defer(() -> {
+                    if (!concurrencyLimit.tryAcquire()) {
+                        return Mono.error(concurrencyLimitReached());
+                    }
+                    var released = new AtomicBoolean();
+                    Runnable release = () -> {
+                        if (released.compareAndSet(false, true)) {
+                            concurrencyLimit.release();
+                        }
+                    };
+                    return defaultWebClient.post()
+                            .uri(uri)
+                            .body(Mono.just(createDto), createDto.getClass())
+                            .retrieve()
+                            .toEntityFlux(DataBuffer.class)
+                            .timeout(Duration.ofSeconds(timeoutSeconds))
+                            .transformDeferred(CircuitBreakerOperator.of(managementServiceCircuitBreaker))
+                            .map(response -> Objects.requireNonNull(response.getBody())
+                                    .timeout(Duration.ofSeconds(timeoutSeconds))
+                                    .doFinally(signalType -> release.run()))
+                            .doOnError(e -> release.run())
+                            .doOnCancel(release);
+                })
+                .onErrorMap(WebClientResponseException.class, this::toCreateCertificateException)
+                .onErrorMap(TimeoutException.class, this::toCreateCertificateException)
+                .onErrorMap(CallNotPermittedException.class, this::toCreateCertificateException);
+        return stageMetrics.time(STAGE_MANAGEMENT_SERVICE, stageType(resourcePath), call);
+    }
+
+    /**
+     * @return the type of the request bound to the calling thread, so that the calls of the batch endpoints are tagged
+     * with the batch type, or the type of the resource path if the call is not made on a request thread
+     */
+    private static String stageType(String resourcePath) {
+        String type = CertificateStageMetrics.typeOfCurrentRequest();
+        return TYPE_NONE.equals(type) ? CertificateStageMetrics.typeOfPath(resourcePath) : type;
+    }
+
+    private String getUri(String resourcePath) {
         final var uri = UriComponentsBuilder.fromHttpUrl(serviceURL + covidcertificateApiV1Path + resourcePath).toUriString();
         log.debug("Call the CovidCertificateGenerationService with url {}", kv("url", uri));
+        return uri;
+    }
 
+    private void setSystemSource(CertificateCreateDto createDto) {
         if (createDto.getSystemSource() != null) {
             log.debug("SystemSource set in request. Checking CommonName...");
             var commonName = ((CustomHeaderAuthenticationToken) SecurityContextHolder.getContext().getAuthentication()).getId();
@@ -74,22 +214,25 @@ public class CovidCertificateGenerationService {
         } else {
             createDto.setSystemSource(SystemSource.ApiGateway);
         }
+    }
 
-        try {
-            CovidCertificateCreateResponseDto response = defaultWebClient.post()
-                    .uri(uri)
-                    .body(Mono.just(createDto), createDto.getClass())
-                    .retrieve()
-                    .bodyToMono(CovidCertificateCreateResponseDto.class)
-                    .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
-                    .block();
-
-            log.trace("CovidCertificateGenerationService Response: {}", response);
-            return response;
-
-        } catch (WebClientResponseException e) {
-            RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
-            throw new CreateCertificateException(errorResponse);
-        }
+    private CreateCertificateException concurrencyLimitReached() {
+        log.warn("Concurrency limit of certificate creation reached {}", kv("maxConcurrentRequests", maxConcurrentRequests));
+        return new CreateCertificateException(CREATE_CERTIFICATE_CONCURRENCY_LIMIT);
+    }
+
+    private CreateCertificateException toCreateCertificateException(WebClientResponseException e) {
+        RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
+        return new CreateCertificateException(errorResponse);
+    }
+
+    private CreateCertificateException toCreateCertificateException(TimeoutException e) {
+        log.warn("Certificate creation timed out {}", kv("timeoutSeconds", timeoutSeconds));
+        return new CreateCertificateException(CREATE_CERTIFICATE_TIMEOUT);
+    }
+
+    private CreateCertificateException toCreateCertificateException(CallNotPermittedException e) {
+        log.warn("Circuit breaker of management service is open, certificate not created");
+        return new CreateCertificateException(MANAGEMENT_SERVICE_UNAVAILABLE);
     }
 }
@@ -4,6 +4,13 @@ import ch.admin.bag.covidcertificate.gateway.error.RestError;
 import ch.admin.bag.covidcertificate.gateway.service.dto.RevokeCertificateException;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RevocationDto;
 import ch.admin.bag.covidcertificate.gateway.service.util.WebClientUtils;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,6 +20,11 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_CONCURRENCY_LIMIT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE;
+import static ch.admin.bag.covidcertificate.gateway.service.config.ManagementServiceResilienceConfig.REVOCATION_BULKHEAD;
 import static net.logstash.logback.argument.StructuredArguments.kv;
 
 @Service
@@ -24,6 +36,15 @@ public class CovidCertificateRevocationService {
     private String serviceUri;
 
     private final WebClient defaultWebClient;
+    private final CircuitBreaker managementServiceCircuitBreaker;
+    private final BulkheadRegistry managementServiceBulkheadRegistry;
+
+    private Bulkhead bulkhead;
+
+    @PostConstruct
+    public void init() {
+        bulkhead = managementServiceBulkheadRegistry.bulkhead(REVOCATION_BULKHEAD);
+    }
 
     public void createRevocation(RevocationDto revocationDto) {
         UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serviceUri + "api/v1/revocation/");
@@ -36,11 +57,19 @@ public class CovidCertificateRevocationService {
                     .body(Mono.just(revocationDto), revocationDto.getClass())
                     .retrieve()
                     .bodyToMono(Void.class)
+                    .transformDeferred(BulkheadOperator.of(bulkhead))
+                    .transformDeferred(CircuitBreakerOperator.of(managementServiceCircuitBreaker))
                     .block();
 
         } catch (WebClientResponseException e) {
             RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
             throw new RevokeCertificateException(errorResponse);
+        } catch (CallNotPermittedException e) {
+            log.warn("Circuit breaker of management service is open, revocation not created {}", kv("url", uri));
+            throw new RevokeCertificateException(MANAGEMENT_SERVICE_UNAVAILABLE);
+        } catch (BulkheadFullException e) {
+            log.warn("Concurrency limit of revocation reached {}", kv("url", uri));
+            throw new RevokeCertificateException(MANAGEMENT_SERVICE_CONCURRENCY_LIMIT);
         }
     }
 }
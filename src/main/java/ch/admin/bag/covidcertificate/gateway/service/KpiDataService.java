@@ -1,22 +1,308 @@
 package ch.admin.bag.covidcertificate.gateway.service;
 
 import ch.admin.bag.covidcertificate.gateway.domain.KpiData;
-import ch.admin.bag.covidcertificate.gateway.domain.KpiDataRepository;
+import ch.admin.bag.covidcertificate.gateway.domain.TimeOrderedUuidGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_CANTON;
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Collects KPI entries in a bounded in-memory queue and writes them to the database in JDBC batches on a background
+ * thread, so that KPI inserts are not on the critical path of the API calls. A batch is written as soon as the queue
+ * holds <code>batch-size</code> entries or at the latest after <code>flush-interval</code> milliseconds. When the queue
+ * is full, new entries are dropped and counted. A batch that cannot be written is tried again up to
+ * <code>retry.max-attempts</code> times in total, with a delay of <code>retry.backoff</code> milliseconds that doubles
+ * with every attempt, so that a short database outage or failover does not lose entries.
+ * <p>
+ * Optionally, the entries are also counted in memory per time bucket, type, details, country and canton, and the counts
+ * are added to the table <code>kpi_rollup</code> every <code>rollup.flush-interval</code> milliseconds. Reports can
+ * then read one row per bucket and combination instead of one row per entry, and the single rows can be disabled with
+ * <code>raw.enabled</code>.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class KpiDataService {
 
-    private final KpiDataRepository logRepository;
+    private static final String INSERT_KPI_SQL = "insert into kpi (id, timestamp, type, value, uvci, details, country) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPSERT_KPI_ROLLUP_SQL = "insert into kpi_rollup (bucket, type, details, country, canton, count) values (?, ?, ?, ?, ?, ?) " +
+            "on conflict (bucket, type, details, country, canton) do update set count = kpi_rollup.count + excluded.count";
+    private static final String METRIC_PREFIX = "cc.kpi.queue.";
+    private static final String ROLLUP_METRIC_PREFIX = "cc.kpi.rollup.";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${cc-api-gateway-service.kpi.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${cc-api-gateway-service.kpi.batch-size}")
+    private int batchSize;
+
+    @Value("${cc-api-gateway-service.kpi.shutdown-timeout-seconds}")
+    private int shutdownTimeoutSeconds;
+
+    @Value("${cc-api-gateway-service.kpi.retry.max-attempts}")
+    private int retryMaxAttempts;
+
+    @Value("${cc-api-gateway-service.kpi.retry.backoff}")
+    private long retryBackoff;
+
+    @Value("${cc-api-gateway-service.kpi.raw.enabled}")
+    private boolean rawEnabled;
+
+    @Value("${cc-api-gateway-service.kpi.rollup.enabled}")
+    private boolean rollupEnabled;
+
+    @Value("${cc-api-gateway-service.kpi.rollup.bucket}")
+    private ChronoUnit rollupBucket;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private BlockingQueue<KpiData> queue;
+    private ExecutorService writer;
+    private Counter droppedCounter;
+    private Counter writtenCounter;
+    private Counter retriedCounter;
+    private Counter failedCounter;
+    private final Map<RollupKey, RollupCount> rollupCounts = new ConcurrentHashMap<>();
+    private final ReentrantLock rollupFlushLock = new ReentrantLock();
+    private Counter rollupWrittenCounter;
+    private Counter rollupFailedCounter;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "kpi-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        meterRegistry.gauge(METRIC_PREFIX + "size", queue, BlockingQueue::size);
+        droppedCounter = meterRegistry.counter(METRIC_PREFIX + "dropped");
+        writtenCounter = meterRegistry.counter(METRIC_PREFIX + "written");
+        retriedCounter = meterRegistry.counter(METRIC_PREFIX + "retried");
+        failedCounter = meterRegistry.counter(METRIC_PREFIX + "failed");
+        meterRegistry.gaugeMapSize(ROLLUP_METRIC_PREFIX + "keys", List.of(), rollupCounts);
+        rollupWrittenCounter = meterRegistry.counter(ROLLUP_METRIC_PREFIX + "written");
+        rollupFailedCounter = meterRegistry.counter(ROLLUP_METRIC_PREFIX + "failed");
+    }
 
     public void saveKpiData(LocalDateTime timestamp, String type, String value, String uvci, String details, String country) {
+        if (rollupEnabled) {
+            countRollup(timestamp, type, value, details, country);
+        }
+        if (!rawEnabled) {
+            return;
+        }
         KpiData kpiData = new KpiData(timestamp, type, value, uvci, details, country);
-        logRepository.save(kpiData);
+        if (!queue.offer(kpiData)) {
+            droppedCounter.increment();
+            log.warn("KPI queue is full, dropping entry {} {}", kv("type", type), kv("uvci", uvci));
+            return;
+        }
+        if (queue.size() >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cc-api-gateway-service.kpi.flush-interval}")
+    public void scheduledFlush() {
+        if (!queue.isEmpty()) {
+            requestFlush();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+            log.warn("KPI writer did not terminate within {} seconds", shutdownTimeoutSeconds);
+        }
+        log.info("Draining KPI queue on shutdown {}", kv("size", queue.size()));
+        flush();
+        flushRollup();
+    }
+
+    /**
+     * Adds the counts since the last successful flush to <code>kpi_rollup</code>. All rows are written in one batch, so
+     * either all counts are added or, after a failure, all are added again with the next flush. Counts of buckets that
+     * ended before the previous bucket are removed from memory once they are written.
+     */
+    @Scheduled(fixedDelayString = "${cc-api-gateway-service.kpi.rollup.flush-interval}")
+    public void flushRollup() {
+        if (!rollupEnabled) {
+            return;
+        }
+        rollupFlushLock.lock();
+        try {
+            List<RollupDelta> deltas = new ArrayList<>();
+            rollupCounts.forEach((key, count) -> {
+                long total = count.total.sum();
+                if (total > count.written) {
+                    deltas.add(new RollupDelta(key, count, total));
+                }
+            });
+            if (!deltas.isEmpty()) {
+                writeRollup(deltas);
+            }
+            var expired = LocalDateTime.now().truncatedTo(rollupBucket).minus(1, rollupBucket);
+            for (var key : rollupCounts.keySet()) {
+                if (key.bucket.isBefore(expired)) {
+                    // atomic with countRollup, so that no count is added to an entry while it is removed
+                    rollupCounts.computeIfPresent(key, (k, count) -> count.written == count.total.sum() ? null : count);
+                }
+            }
+        } finally {
+            rollupFlushLock.unlock();
+        }
+    }
+
+    private void countRollup(LocalDateTime timestamp, String type, String value, String details, String country) {
+        var key = new RollupKey(timestamp.truncatedTo(rollupBucket), type, nonNull(details), nonNull(country),
+                KPI_CANTON.equals(type) ? nonNull(value) : "");
+        rollupCounts.compute(key, (k, count) -> {
+            var counted = count != null ? count : new RollupCount();
+            counted.total.increment();
+            return counted;
+        });
+    }
+
+    private void writeRollup(List<RollupDelta> deltas) {
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_KPI_ROLLUP_SQL, deltas, deltas.size(), (ps, delta) -> {
+                ps.setTimestamp(1, Timestamp.valueOf(delta.key.bucket));
+                ps.setString(2, delta.key.type);
+                ps.setString(3, delta.key.details);
+                ps.setString(4, delta.key.country);
+                ps.setString(5, delta.key.canton);
+                ps.setLong(6, delta.total - delta.count.written);
+            });
+            deltas.forEach(delta -> delta.count.written = delta.total);
+            rollupWrittenCounter.increment(deltas.size());
+        } catch (DataAccessException e) {
+            rollupFailedCounter.increment(deltas.size());
+            log.error("Error when writing {} KPI rollup rows", deltas.size(), e);
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+                log.debug("KPI writer is shut down, entries are written when draining the queue");
+            }
+        }
+    }
+
+    void flush() {
+        flushRequested.set(false);
+        List<KpiData> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<KpiData> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                insert(batch);
+                writtenCounter.increment(batch.size());
+                return;
+            } catch (DataAccessException e) {
+                if (attempt >= retryMaxAttempts || !backOff(attempt)) {
+                    failedCounter.increment(batch.size());
+                    log.error("Error when writing {} KPI entries, dropping them after {} attempts", batch.size(), attempt, e);
+                    return;
+                }
+                retriedCounter.increment(batch.size());
+                log.warn("Error when writing KPI entries, retrying {} {} {}", kv("size", batch.size()), kv("attempt", attempt),
+                        kv("error", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the writer was interrupted while waiting, e.g. on shutdown
+     */
+    private boolean backOff(int attempt) {
+        try {
+            Thread.sleep(retryBackoff << (attempt - 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void insert(List<KpiData> batch) {
+        jdbcTemplate.batchUpdate(INSERT_KPI_SQL, batch, batch.size(), (ps, kpiData) -> {
+            ps.setObject(1, TimeOrderedUuidGenerator.next());
+            ps.setTimestamp(2, Timestamp.valueOf(kpiData.getTimestamp()));
+            ps.setString(3, kpiData.getType());
+            ps.setString(4, kpiData.getValue());
+            ps.setString(5, kpiData.getUvci());
+            ps.setString(6, kpiData.getDetails());
+            ps.setString(7, kpiData.getCountry());
+        });
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class RollupKey {
+        private final LocalDateTime bucket;
+        private final String type;
+        private final String details;
+        private final String country;
+        private final String canton;
+    }
+
+    private static final class RollupCount {
+        private final LongAdder total = new LongAdder();
+        // only accessed while holding rollupFlushLock
+        private long written;
+    }
+
+    @AllArgsConstructor
+    private static final class RollupDelta {
+        private final RollupKey key;
+        private final RollupCount count;
+        private final long total;
     }
 }
@@ -0,0 +1,135 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Maintains the monthly partitions of the table <code>kpi</code>, which is partitioned by the PostgreSQL migration
+ * V1_0_7. The partitions of the current and the next <code>months-ahead</code> months are created in advance, so
+ * that no entries are written to the default partition. Partitions that ended more than
+ * <code>retention-months</code> months ago are detached and dropped. Runs on startup and then every
+ * <code>interval</code> milliseconds; all statements are idempotent, so several instances can run it.
+ * <p>
+ * A partition cannot be created while the default partition contains rows of its month. Such months are skipped and
+ * logged as error, and the rows of the default partition are exported as <code>cc.kpi.partitions.default.rows</code>.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class KpiPartitionService {
+
+    static final DateTimeFormatter PARTITION_NAME_FORMAT = DateTimeFormatter.ofPattern("'kpi_y'uuuu'm'MM");
+    private static final String PARTITIONS_SQL = "select c.relname from pg_inherits i " +
+            "join pg_class c on c.oid = i.inhrelid join pg_class p on p.oid = i.inhparent where p.relname = 'kpi'";
+    static final String COUNT_DEFAULT_ROWS_SQL = "select count(*) from kpi_default";
+    static final String DEFAULT_ROWS_IN_MONTH_SQL = "select exists (select 1 from kpi_default where timestamp >= ? and timestamp < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong defaultPartitionRows = new AtomicLong();
+
+    @Value("${cc-api-gateway-service.kpi.partitions.enabled}")
+    private boolean enabled;
+
+    @Value("${cc-api-gateway-service.kpi.partitions.months-ahead}")
+    private int monthsAhead;
+
+    @Value("${cc-api-gateway-service.kpi.partitions.retention-months}")
+    private int retentionMonths;
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge("cc.kpi.partitions.default.rows", List.of(), defaultPartitionRows);
+    }
+
+    @Scheduled(fixedDelayString = "${cc-api-gateway-service.kpi.partitions.interval}")
+    public void maintainPartitions() {
+        if (enabled) {
+            maintainPartitions(YearMonth.now());
+        }
+    }
+
+    void maintainPartitions(YearMonth currentMonth) {
+        try {
+            long defaultRows = countDefaultRows();
+            for (int i = 0; i <= monthsAhead; i++) {
+                YearMonth month = currentMonth.plusMonths(i);
+                if (defaultRows > 0 && hasDefaultRows(month)) {
+                    log.error("Cannot create KPI partition, the default partition contains rows of its month {}",
+                            kv("partition", partitionName(month)));
+                } else {
+                    createPartition(month);
+                }
+            }
+            if (retentionMonths > 0) {
+                dropPartitionsBefore(currentMonth.minusMonths(retentionMonths));
+            }
+        } catch (DataAccessException e) {
+            log.error("Error when maintaining the KPI partitions", e);
+        }
+    }
+
+    private long countDefaultRows() {
+        Long result = jdbcTemplate.queryForObject(COUNT_DEFAULT_ROWS_SQL, Long.class);
+        long rows = result != null ? result : 0;
+        defaultPartitionRows.set(rows);
+        if (rows > 0) {
+            log.error("The default KPI partition contains rows {}", kv("rows", rows));
+        }
+        return rows;
+    }
+
+    private boolean hasDefaultRows(YearMonth month) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(DEFAULT_ROWS_IN_MONTH_SQL, Boolean.class,
+                Timestamp.valueOf(month.atDay(1).atStartOfDay()),
+                Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay())));
+    }
+
+    private void createPartition(YearMonth month) {
+        jdbcTemplate.execute(String.format("create table if not exists %s partition of kpi for values from ('%s') to ('%s')",
+                partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1)));
+    }
+
+    private void dropPartitionsBefore(YearMonth oldestRetainedMonth) {
+        for (String partition : jdbcTemplate.queryForList(PARTITIONS_SQL, String.class)) {
+            YearMonth month = monthOf(partition);
+            if (month != null && month.isBefore(oldestRetainedMonth)) {
+                log.info("Dropping expired KPI partition {}", kv("partition", partition));
+                jdbcTemplate.execute("alter table kpi detach partition " + partition);
+                jdbcTemplate.execute("drop table " + partition);
+            }
+        }
+    }
+
+    static String partitionName(YearMonth month) {
+        return month.format(PARTITION_NAME_FORMAT);
+    }
+
+    /**
+     * @return the month of the given partition, or <code>null</code> for partitions that are not monthly partitions,
+     * e.g. the default partition
+     */
+    static YearMonth monthOf(String partition) {
+        try {
+            return YearMonth.parse(partition, PARTITION_NAME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
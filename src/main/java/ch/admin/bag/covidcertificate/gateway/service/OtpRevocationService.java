@@ -4,30 +4,66 @@ import ch.admin.bag.covidcertificate.gateway.domain.OtpRevocation;
 import ch.admin.bag.covidcertificate.gateway.domain.OtpRevocationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Keeps an in-memory index of all revoked OTP <code>jti</code>s. The index is loaded completely once and afterwards
+ * only revocations created since the last seen <code>created_at</code> (minus a small overlap to tolerate concurrent
+ * inserts) are read, so a lookup is O(1) and a refresh only costs the number of new revocations.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class OtpRevocationService {
 
-    private static final String OTP_CACHE_NAME = "otps";
-
     private final OtpRevocationRepository otpRevocationRepository;
 
-    @Cacheable(OTP_CACHE_NAME)
-    public List<OtpRevocation> getOtpRevocations() {
-        return otpRevocationRepository.findAll();
-    }
+    @Value("${cc-api-gateway-service.otp-revocation.overlap-seconds}")
+    private long overlapSeconds;
 
-    @Scheduled(fixedRateString = "${cc-api-gateway-service.cache-duration}")
-    @CacheEvict(value = OTP_CACHE_NAME, allEntries = true)
-    public void clearCache() {
+    private final Set<String> revokedJtis = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private LocalDateTime watermark;
+    private volatile boolean initialized;
+
+    public boolean isRevoked(String jti) {
+        if (!initialized) {
+            refresh();
+        }
+        return jti != null && revokedJtis.contains(jti);
     }
 
+    @Scheduled(fixedRateString = "${cc-api-gateway-service.otp-revocation.refresh-interval}")
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            List<OtpRevocation> otpRevocations;
+            if (watermark == null) {
+                otpRevocations = otpRevocationRepository.findAll();
+            } else {
+                otpRevocations = otpRevocationRepository.findAllByCreatedAtGreaterThanEqual(watermark.minusSeconds(overlapSeconds));
+            }
+
+            for (OtpRevocation otpRevocation : otpRevocations) {
+                revokedJtis.add(otpRevocation.getJti());
+                if (otpRevocation.getCreatedAt() != null && (watermark == null || otpRevocation.getCreatedAt().isAfter(watermark))) {
+                    watermark = otpRevocation.getCreatedAt();
+                }
+            }
+            initialized = true;
+            log.debug("Refreshed OTP revocations {} {} {}", kv("read", otpRevocations.size()), kv("total", revokedJtis.size()), kv("watermark", watermark));
+        } finally {
+            refreshLock.unlock();
+        }
+    }
 }
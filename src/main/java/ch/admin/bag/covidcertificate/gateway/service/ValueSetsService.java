@@ -10,6 +10,21 @@ import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RapidTestDto;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.SystemSource;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccineDto;
 import ch.admin.bag.covidcertificate.gateway.service.util.WebClientUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -20,10 +35,24 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.List;
 
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_CONCURRENCY_LIMIT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE;
+import static ch.admin.bag.covidcertificate.gateway.service.config.ManagementServiceResilienceConfig.VALUE_SETS_BULKHEAD;
 import static net.logstash.logback.argument.StructuredArguments.kv;
 
+/**
+ * Reads the value sets from the management service. The value sets change rarely, so they are cached: entries older
+ * than <code>ttl-seconds</code> are served while they are refreshed in the background, entries older than
+ * <code>max-stale-seconds</code> are loaded again on the calling thread. With <code>serve-stale-on-error</code> the
+ * last successfully loaded value set is returned when the management service is not available. The last loaded value
+ * sets are kept in a cache bounded by <code>max-size</code> as well, as the paths contain the language requested by
+ * the caller. The calls to the management service are limited by the <code>value-sets</code> bulkhead and fail fast
+ * while the circuit breaker of the management service is open.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -36,144 +65,118 @@ public class ValueSetsService {
     public static final String COUNTRY_CODE_PATH = "api/v1/valuesets/countries";
     public static final String PARAMETER_SYSTEM_SOURCE = "systemSource";
 
+    private static final String CACHE_NAME = "valuesets";
+
     @Value("${cc-management-service.uri}")
     private String serviceUri;
 
-    private final WebClient defaultWebClient;
+    @Value("${cc-api-gateway-service.value-sets.cache.ttl-seconds}")
+    private long ttlSeconds;
 
-    public List<RapidTestDto> getRapidTests() {
-        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serviceUri + RAPID_TESTS_PATH);
+    @Value("${cc-api-gateway-service.value-sets.cache.max-stale-seconds}")
+    private long maxStaleSeconds;
 
-        String uri = builder.toUriString();
-        log.debug("Call the ValueSetsService with url {}", kv("url", uri));
-        try {
-            List<RapidTestDto> response = defaultWebClient
-                    .get()
-                    .uri(uri)
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<List<RapidTestDto>>() {})
-                    .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
-                    .block();
+    @Value("${cc-api-gateway-service.value-sets.cache.max-size}")
+    private long maxSize;
 
-            log.trace("ValueSetsService Response: {}", response);
-            return response;
+    @Value("${cc-api-gateway-service.value-sets.cache.serve-stale-on-error}")
+    private boolean serveStaleOnError;
 
-        } catch (WebClientResponseException e) {
-            RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
-            throw new ReadValueSetsException(errorResponse);
-        }
+    private final WebClient defaultWebClient;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker managementServiceCircuitBreaker;
+    private final BulkheadRegistry managementServiceBulkheadRegistry;
+
+    private Cache<ValueSetKey, Object> lastLoadedValueSets;
+    private LoadingCache<ValueSetKey, Object> valueSetCache;
+    private Bulkhead bulkhead;
+
+    @PostConstruct
+    public void init() {
+        bulkhead = managementServiceBulkheadRegistry.bulkhead(VALUE_SETS_BULKHEAD);
+        valueSetCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .expireAfterWrite(Duration.ofSeconds(maxStaleSeconds))
+                .recordStats()
+                .build(this::load);
+        CaffeineCacheMetrics.monitor(meterRegistry, valueSetCache, CACHE_NAME);
+        lastLoadedValueSets = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .build();
     }
 
-    public List<IssuableRapidTestDto> getIssuableRapidTests() {
-        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serviceUri + ISSUABLE_RAPID_TESTS_PATH);
-
-        String uri = builder.toUriString();
-        log.debug("Call the ValueSetsService with url {}", kv("url", uri));
-        try {
-            List<IssuableRapidTestDto> response = defaultWebClient
-                    .get()
-                    .uri(uri)
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<List<IssuableRapidTestDto>>() {})
-                    .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
-                    .block();
-
-            log.trace("ValueSetsService Response: {}", response);
-            return response;
+    public List<RapidTestDto> getRapidTests() {
+        return get("rapid-tests", RAPID_TESTS_PATH, new ParameterizedTypeReference<List<RapidTestDto>>() {});
+    }
 
-        } catch (WebClientResponseException e) {
-            RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
-            throw new ReadValueSetsException(errorResponse);
-        }
+    public List<IssuableRapidTestDto> getIssuableRapidTests() {
+        return get("issuable-rapid-tests", ISSUABLE_RAPID_TESTS_PATH, new ParameterizedTypeReference<List<IssuableRapidTestDto>>() {});
     }
 
     public List<VaccineDto> getVaccines() {
-        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serviceUri + VACCINES_PATH);
-
-        String uri = builder.toUriString();
-        log.debug("Call the ValueSetsService with url {}", kv("url", uri));
-        try {
-            List<VaccineDto> response = defaultWebClient
-                    .get()
-                    .uri(uri)
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<List<VaccineDto>>() {})
-                    .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
-                    .block();
-
-            log.trace("ValueSetsService Response: {}", response);
-            return response;
-
-        } catch (WebClientResponseException e) {
-            RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
-            throw new ReadValueSetsException(errorResponse);
-        }
+        return get("vaccines", VACCINES_PATH, new ParameterizedTypeReference<List<VaccineDto>>() {});
     }
 
     public List<IssuableVaccineDto> getIssuableVaccines(SystemSource systemSource) {
-        UriComponentsBuilder builder;
+        String path;
         if(systemSource != null) {
-            builder = UriComponentsBuilder.fromHttpUrl(serviceUri + ISSUABLE_VACCINES_PATH + "/" + systemSource.name());
+            path = ISSUABLE_VACCINES_PATH + "/" + systemSource.name();
         } else {
-            builder = UriComponentsBuilder.fromHttpUrl(serviceUri + ISSUABLE_VACCINES_PATH);
-        }
-
-        String uri = builder.toUriString();
-        log.debug("Call the ValueSetsService with url {}", kv("url", uri));
-        try {
-            List<IssuableVaccineDto> response = defaultWebClient
-                    .get()
-                    .uri(uri)
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<List<IssuableVaccineDto>>() {})
-                    .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
-                    .block();
-
-            log.trace("ValueSetsService Response: {}", response);
-            return response;
-
-        } catch (WebClientResponseException e) {
-            RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
-            throw new ReadValueSetsException(errorResponse);
+            path = ISSUABLE_VACCINES_PATH;
         }
+        return get("issuable-vaccines", path, new ParameterizedTypeReference<List<IssuableVaccineDto>>() {});
     }
 
     public CountryCodesDto getCountryCodes(){
-        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serviceUri + COUNTRY_CODE_PATH);
-
-        String uri = builder.toUriString();
-        log.debug("Call the ValueSetsService with url {}", kv("url", uri));
-        try {
-            CountryCodesDto response = defaultWebClient
-                    .get()
-                    .uri(uri)
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<CountryCodesDto>() {})
-                    .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
-                    .block();
+        return get("countries", COUNTRY_CODE_PATH, new ParameterizedTypeReference<CountryCodesDto>() {});
+    }
 
-            log.trace("ValueSetsService Response: {}", response);
-            return response;
+    public List<CountryCodeDto> getCountryCodesByLanguage(String language){
+        return get("countries-by-language", COUNTRY_CODE_PATH + "/" + language, new ParameterizedTypeReference<List<CountryCodeDto>>() {});
+    }
 
-        } catch (WebClientResponseException e) {
-            RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
-            throw new ReadValueSetsException(errorResponse);
+    @SuppressWarnings("unchecked")
+    private <T> T get(String name, String path, ParameterizedTypeReference<T> type) {
+        var key = new ValueSetKey(name, path, type);
+        try {
+            return (T) valueSetCache.get(key);
+        } catch (RuntimeException e) {
+            Object lastLoadedValueSet = serveStaleOnError ? lastLoadedValueSets.getIfPresent(key) : null;
+            if (lastLoadedValueSet == null) {
+                throw e;
+            }
+            log.warn("Serving stale value set after error {} {}", kv("valueSet", name), kv("path", path), e);
+            meterRegistry.counter("cc.valuesets.stale", "valueSet", name).increment();
+            return (T) lastLoadedValueSet;
         }
     }
 
-    public List<CountryCodeDto> getCountryCodesByLanguage(String language){
+    private Object load(ValueSetKey key) {
+        Object valueSet = Timer.builder("cc.valuesets.load")
+                .tag("valueSet", key.getName())
+                .register(meterRegistry)
+                .record(() -> read(key.getPath(), key.getType()));
+        if (serveStaleOnError) {
+            lastLoadedValueSets.put(key, valueSet);
+        }
+        return valueSet;
+    }
 
-        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serviceUri + COUNTRY_CODE_PATH + "/" + language);
+    private <T> T read(String path, ParameterizedTypeReference<T> type) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serviceUri + path);
 
         String uri = builder.toUriString();
         log.debug("Call the ValueSetsService with url {}", kv("url", uri));
         try {
-            List<CountryCodeDto> response = defaultWebClient
+            T response = defaultWebClient
                     .get()
                     .uri(uri)
                     .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<List<CountryCodeDto>>() {})
+                    .bodyToMono(type)
                     .switchIfEmpty(Mono.error(new IllegalStateException("Response Body is null")))
+                    .transformDeferred(BulkheadOperator.of(bulkhead))
+                    .transformDeferred(CircuitBreakerOperator.of(managementServiceCircuitBreaker))
                     .block();
 
             log.trace("ValueSetsService Response: {}", response);
@@ -182,6 +185,22 @@ public class ValueSetsService {
         } catch (WebClientResponseException e) {
             RestError errorResponse = WebClientUtils.handleWebClientResponseError(e);
             throw new ReadValueSetsException(errorResponse);
+        } catch (CallNotPermittedException e) {
+            log.warn("Circuit breaker of management service is open, value set not read {}", kv("url", uri));
+            throw new ReadValueSetsException(MANAGEMENT_SERVICE_UNAVAILABLE);
+        } catch (BulkheadFullException e) {
+            log.warn("Concurrency limit of value sets reached {}", kv("url", uri));
+            throw new ReadValueSetsException(MANAGEMENT_SERVICE_CONCURRENCY_LIMIT);
         }
     }
+
+    @Getter
+    @RequiredArgsConstructor
+    @EqualsAndHashCode(onlyExplicitlyIncluded = true)
+    private static final class ValueSetKey {
+        private final String name;
+        @EqualsAndHashCode.Include
+        private final String path;
+        private final ParameterizedTypeReference<?> type;
+    }
 }
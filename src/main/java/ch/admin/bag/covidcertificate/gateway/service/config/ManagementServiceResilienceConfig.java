@@ -0,0 +1,116 @@
+package ch.admin.bag.covidcertificate.gateway.service.config;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Circuit breaker and bulkheads for the calls to the management service. All calls share one circuit breaker, as a
+ * degradation of the management service affects all operations. Each operation has its own bulkhead, so that slow
+ * calls of one operation cannot take the threads and connections of the others. The states are exported as
+ * <code>resilience4j.circuitbreaker.*</code> and <code>resilience4j.bulkhead.*</code>.
+ */
+@Configuration
+@Slf4j
+public class ManagementServiceResilienceConfig {
+
+    public static final String CIRCUIT_BREAKER_NAME = "cc-management-service";
+    public static final String VALUE_SETS_BULKHEAD = "value-sets";
+    public static final String REVOCATION_BULKHEAD = "revocation";
+
+    @Value("${cc-api-gateway-service.management-service.circuit-breaker.failure-rate-threshold}")
+    private float failureRateThreshold;
+
+    @Value("${cc-api-gateway-service.management-service.circuit-breaker.slow-call-rate-threshold}")
+    private float slowCallRateThreshold;
+
+    @Value("${cc-api-gateway-service.management-service.circuit-breaker.slow-call-duration-seconds}")
+    private long slowCallDurationSeconds;
+
+    @Value("${cc-api-gateway-service.management-service.circuit-breaker.sliding-window-size}")
+    private int slidingWindowSize;
+
+    @Value("${cc-api-gateway-service.management-service.circuit-breaker.minimum-number-of-calls}")
+    private int minimumNumberOfCalls;
+
+    @Value("${cc-api-gateway-service.management-service.circuit-breaker.wait-duration-in-open-state-seconds}")
+    private long waitDurationInOpenStateSeconds;
+
+    @Value("${cc-api-gateway-service.management-service.circuit-breaker.permitted-calls-in-half-open-state}")
+    private int permittedCallsInHalfOpenState;
+
+    @Value("${cc-api-gateway-service.management-service.bulkhead.value-sets.max-concurrent-calls}")
+    private int valueSetsMaxConcurrentCalls;
+
+    @Value("${cc-api-gateway-service.management-service.bulkhead.revocation.max-concurrent-calls}")
+    private int revocationMaxConcurrentCalls;
+
+    /**
+     * Counts server errors, timeouts and connection errors as failures. Client errors are answers of a healthy
+     * management service, e.g. to an invalid request, and rejected calls of a full bulkhead never reached it.
+     */
+    @Bean
+    public CircuitBreaker managementServiceCircuitBreaker(MeterRegistry meterRegistry) {
+        var config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationThreshold(Duration.ofSeconds(slowCallDurationSeconds))
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(Duration.ofSeconds(waitDurationInOpenStateSeconds))
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .recordException(ManagementServiceResilienceConfig::isFailure)
+                .ignoreExceptions(BulkheadFullException.class)
+                .build();
+        var registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+
+        var circuitBreaker = registry.circuitBreaker(CIRCUIT_BREAKER_NAME);
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("Circuit breaker of management service changed state {}", kv("transition", event.getStateTransition())));
+        return circuitBreaker;
+    }
+
+    /**
+     * Bulkheads of the value set and revocation calls. Calls that exceed the limit are rejected immediately instead
+     * of waiting. The certificate creation is limited by <code>certificate-creation.max-concurrent-requests</code>.
+     */
+    @Bean
+    public BulkheadRegistry managementServiceBulkheadRegistry(MeterRegistry meterRegistry) {
+        var registry = BulkheadRegistry.ofDefaults();
+        registry.bulkhead(VALUE_SETS_BULKHEAD, bulkheadConfig(valueSetsMaxConcurrentCalls));
+        registry.bulkhead(REVOCATION_BULKHEAD, bulkheadConfig(revocationMaxConcurrentCalls));
+        TaggedBulkheadMetrics.ofBulkheadRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+
+    static boolean isFailure(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            return ((WebClientResponseException) e).getRawStatusCode() >= 500;
+        }
+        return true;
+    }
+
+    private static BulkheadConfig bulkheadConfig(int maxConcurrentCalls) {
+        return BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+    }
+}
@@ -0,0 +1,162 @@
+package ch.admin.bag.covidcertificate.gateway.service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Keeps one client credentials access token per client registration and renews it in the background before it expires,
+ * so that requests to the management service do not wait for the identity provider. The tokens of the given client
+ * registrations are fetched by the first background refresh after startup. Tokens are only fetched on the request path
+ * for other registrations or if the token is about to expire because the background refresh failed; concurrent
+ * requests then wait for a single call to the identity provider.
+ * <p>
+ * The time of the token requests is exposed as <code>oauth2.token.refresh</code> and the age of the current token as
+ * <code>oauth2.token.age</code>, both tagged with the client registration.
+ */
+@Slf4j
+public class OAuth2AccessTokenManager implements OAuth2AuthorizedClientManager {
+    static final Duration MIN_REMAINING_VALIDITY = Duration.ofSeconds(5);
+    private static final String PRINCIPAL_NAME = "cc-api-gateway-service";
+
+    private final ClientRegistrationRepository clientRegistrationRepository;
+    private final OAuth2AuthorizedClientProvider authorizedClientProvider;
+    private final MeterRegistry meterRegistry;
+    private final Duration refreshSkew;
+    private final Clock clock;
+    private final Authentication principal = OAuth2AuthorizeRequest.withClientRegistrationId(PRINCIPAL_NAME)
+            .principal(PRINCIPAL_NAME)
+            .build()
+            .getPrincipal();
+
+    private final Set<String> registrationIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, OAuth2AuthorizedClient> authorizedClients = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public OAuth2AccessTokenManager(ClientRegistrationRepository clientRegistrationRepository,
+                                    OAuth2AuthorizedClientProvider authorizedClientProvider,
+                                    MeterRegistry meterRegistry, Duration refreshSkew, Clock clock,
+                                    Collection<String> registrationIds) {
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.authorizedClientProvider = authorizedClientProvider;
+        this.meterRegistry = meterRegistry;
+        this.refreshSkew = refreshSkew;
+        this.clock = clock;
+        this.registrationIds.addAll(registrationIds);
+    }
+
+    @Override
+    public OAuth2AuthorizedClient authorize(OAuth2AuthorizeRequest authorizeRequest) {
+        String registrationId = authorizeRequest.getClientRegistrationId();
+        OAuth2AuthorizedClient authorizedClient = authorizedClients.get(registrationId);
+        if (expiresWithin(authorizedClient, MIN_REMAINING_VALIDITY)) {
+            registrationIds.add(registrationId);
+            log.warn("Requesting access token on the request path {}", kv("registrationId", registrationId));
+            authorizedClient = refreshIfExpiring(registrationId);
+        }
+        return authorizedClient;
+    }
+
+    /**
+     * Fetches the tokens of all known client registrations that have none or expire within the refresh skew. Failures
+     * are logged; the current token is used until it expires.
+     */
+    @Scheduled(fixedDelayString = "${cc-api-gateway-service.oauth2.token-refresh.interval}")
+    public void refreshTokens() {
+        for (String registrationId : registrationIds) {
+            try {
+                refreshIfExpiring(registrationId);
+            } catch (RuntimeException e) {
+                log.warn("Refresh of access token failed {}", kv("registrationId", registrationId), e);
+            }
+        }
+    }
+
+    private OAuth2AuthorizedClient refreshIfExpiring(String registrationId) {
+        // a ReentrantLock instead of synchronized, so that a waiting virtual thread does not pin its carrier thread
+        ReentrantLock lock = locks.computeIfAbsent(registrationId, id -> new ReentrantLock());
+        lock.lock();
+        try {
+            // another thread may have renewed the token while this one waited
+            OAuth2AuthorizedClient authorizedClient = authorizedClients.get(registrationId);
+            if (!expiresWithin(authorizedClient, refreshSkew)) {
+                return authorizedClient;
+            }
+            authorizedClient = requestToken(registrationId);
+            if (authorizedClients.put(registrationId, authorizedClient) == null) {
+                Gauge.builder("oauth2.token.age", this, manager -> manager.tokenAgeSeconds(registrationId))
+                        .tag("registration", registrationId)
+                        .baseUnit("seconds")
+                        .register(meterRegistry);
+            }
+            return authorizedClient;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private OAuth2AuthorizedClient requestToken(String registrationId) {
+        ClientRegistration clientRegistration = clientRegistrationRepository.findByRegistrationId(registrationId);
+        if (clientRegistration == null) {
+            throw new IllegalArgumentException("Could not find ClientRegistration with id '" + registrationId + "'");
+        }
+        OAuth2AuthorizationContext context = OAuth2AuthorizationContext.withClientRegistration(clientRegistration)
+                .principal(principal)
+                .build();
+
+        long start = System.nanoTime();
+        String outcome = "failure";
+        try {
+            OAuth2AuthorizedClient authorizedClient = authorizedClientProvider.authorize(context);
+            if (authorizedClient == null) {
+                throw new IllegalStateException("Client registration '" + registrationId + "' does not support the client credentials grant");
+            }
+            outcome = "success";
+            log.debug("Received access token {} {}", kv("registrationId", registrationId), kv("expiresAt", authorizedClient.getAccessToken().getExpiresAt()));
+            return authorizedClient;
+        } finally {
+            Timer.builder("oauth2.token.refresh")
+                    .tag("registration", registrationId)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private boolean expiresWithin(OAuth2AuthorizedClient authorizedClient, Duration duration) {
+        if (authorizedClient == null) {
+            return true;
+        }
+        Instant expiresAt = authorizedClient.getAccessToken().getExpiresAt();
+        return expiresAt != null && expiresAt.isBefore(clock.instant().plus(duration));
+    }
+
+    private double tokenAgeSeconds(String registrationId) {
+        OAuth2AuthorizedClient authorizedClient = authorizedClients.get(registrationId);
+        if (authorizedClient == null || authorizedClient.getAccessToken().getIssuedAt() == null) {
+            return Double.NaN;
+        }
+        return Duration.between(authorizedClient.getAccessToken().getIssuedAt(), clock.instant()).toMillis() / 1000.0;
+    }
+}
@@ -1,8 +1,10 @@
 package ch.admin.bag.covidcertificate.gateway.service.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.autoconfigure.security.oauth2.client.ClientsConfiguredCondition;
@@ -11,12 +13,22 @@ import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.converter.FormHttpMessageConverter;
 import org.springframework.security.oauth2.client.*;
+import org.springframework.security.oauth2.client.endpoint.DefaultClientCredentialsTokenResponseClient;
+import org.springframework.security.oauth2.client.http.OAuth2ErrorResponseErrorHandler;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.client.web.reactive.function.client.ServletOAuth2AuthorizedClientExchangeFilterFunction;
+import org.springframework.security.oauth2.core.http.converter.OAuth2AccessTokenResponseHttpMessageConverter;
 import org.springframework.security.oauth2.server.resource.web.reactive.function.client.ServletBearerExchangeFilterFunction;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
 /**
  * This configuration makes a WebClient builder factory available that can create a WebClient.Builder instance
  * that builds WebClient instances that automatically add an OAuth2 access token as bearer to the WebClient exchanges.
@@ -35,18 +47,49 @@ public class OAuth2ClientConfiguration {
     @Conditional(ClientsConfiguredCondition.class)
     @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
     public static class ServletWebClientForOAuthClientsConfiguration {
+        @Value("${spring.application.name}")
+        private String applicationName;
+
+        @Value("${cc-api-gateway-service.oauth2.token-refresh.skew-seconds}")
+        private long refreshSkewSeconds;
+
+        @Value("${cc-api-gateway-service.oauth2.token-request.connect-timeout-seconds}")
+        private long tokenRequestConnectTimeoutSeconds;
+
+        @Value("${cc-api-gateway-service.oauth2.token-request.read-timeout-seconds}")
+        private long tokenRequestReadTimeoutSeconds;
+
         @Bean
-        public JeapOAuth2WebclientBuilderFactory jeapOAuth2WebclientBuilderFactory(WebClient.Builder builder, ClientRegistrationRepository clientRegistrationRepository, OAuth2AuthorizedClientService clientService) {
+        public JeapOAuth2WebclientBuilderFactory jeapOAuth2WebclientBuilderFactory(WebClient.Builder builder, OAuth2AccessTokenManager accessTokenManager) {
             return new DefaultJeapOAuth2WebclientBuilderFactory(builder,
-                    new ServletOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager(clientRegistrationRepository, clientService)),
+                    new ServletOAuth2AuthorizedClientExchangeFilterFunction(accessTokenManager),
                     new ServletBearerExchangeFilterFunction());
         }
 
-        private OAuth2AuthorizedClientManager authorizedClientManager(ClientRegistrationRepository clientRegistrationRepository, OAuth2AuthorizedClientService clientService) {
-            AuthorizedClientServiceOAuth2AuthorizedClientManager authorizedClientManager = new AuthorizedClientServiceOAuth2AuthorizedClientManager(clientRegistrationRepository, clientService);
-            OAuth2AuthorizedClientProvider authorizedClientProvider = OAuth2AuthorizedClientProviderBuilder.builder().clientCredentials().build();
-            authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
-            return authorizedClientManager;
+        @Bean
+        public OAuth2AccessTokenManager accessTokenManager(ClientRegistrationRepository clientRegistrationRepository, MeterRegistry meterRegistry) {
+            OAuth2AuthorizedClientProvider authorizedClientProvider = OAuth2AuthorizedClientProviderBuilder.builder()
+                    .clientCredentials(clientCredentials -> clientCredentials.accessTokenResponseClient(tokenResponseClient()))
+                    .build();
+            // the registration used by RestClientConfig is fetched on startup
+            return new OAuth2AccessTokenManager(clientRegistrationRepository, authorizedClientProvider, meterRegistry,
+                    Duration.ofSeconds(refreshSkewSeconds), Clock.systemUTC(), List.of(applicationName));
+        }
+
+        /**
+         * Same as the default token response client, but with timeouts, as the default RestTemplate waits forever for
+         * an identity provider that does not respond.
+         */
+        private DefaultClientCredentialsTokenResponseClient tokenResponseClient() {
+            var requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout((int) Duration.ofSeconds(tokenRequestConnectTimeoutSeconds).toMillis());
+            requestFactory.setReadTimeout((int) Duration.ofSeconds(tokenRequestReadTimeoutSeconds).toMillis());
+            var restTemplate = new RestTemplate(List.of(new FormHttpMessageConverter(), new OAuth2AccessTokenResponseHttpMessageConverter()));
+            restTemplate.setErrorHandler(new OAuth2ErrorResponseErrorHandler());
+            restTemplate.setRequestFactory(requestFactory);
+            var tokenResponseClient = new DefaultClientCredentialsTokenResponseClient();
+            tokenResponseClient.setRestOperations(restTemplate);
+            return tokenResponseClient;
         }
 
     }
@@ -8,27 +8,95 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ClientHttpConnector;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.time.Duration;
 
 @Configuration
 public class RestClientConfig {
 
+    static final String CONNECTION_PROVIDER_NAME = "cc-management-service";
+
     @Value("${spring.application.name}")
     private String applicationName;
 
+    @Value("${cc-management-service.uri}")
+    private String serviceUri;
+
     @Value("${cc-api-gateway-service.rest.connectTimeoutSeconds}")
     private int connectTimeout;
 
     @Value("${cc-api-gateway-service.rest.readTimeoutSeconds}")
     private int readTimeout;
 
+    @Value("${cc-api-gateway-service.rest.http2.enabled}")
+    private boolean http2Enabled;
+
+    @Value("${cc-api-gateway-service.rest.compression.enabled}")
+    private boolean compressionEnabled;
+
+    @Value("${cc-api-gateway-service.rest.pool.max-connections}")
+    private int maxConnections;
+
+    @Value("${cc-api-gateway-service.rest.pool.pending-acquire-max-count}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${cc-api-gateway-service.rest.pool.pending-acquire-timeout-seconds}")
+    private int pendingAcquireTimeout;
+
+    @Value("${cc-api-gateway-service.rest.pool.max-idle-time-seconds}")
+    private int maxIdleTime;
+
+    @Value("${cc-api-gateway-service.rest.pool.max-life-time-seconds}")
+    private int maxLifeTime;
+
+    @Value("${cc-api-gateway-service.rest.pool.evict-in-background-seconds}")
+    private int evictInBackground;
+
+    @Value("${cc-api-gateway-service.rest.pool.leasing-strategy}")
+    private String leasingStrategy;
+
+    /**
+     * Connection pool for the calls to the management service. The pool metrics are registered in the global
+     * Micrometer registry as <code>reactor.netty.connection.provider.*</code> with the tag
+     * <code>name=cc-management-service</code> and are exported on <code>/actuator/prometheus</code>.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider managementServiceConnectionProvider() {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(CONNECTION_PROVIDER_NAME)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeout))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTime))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTime))
+                .evictInBackground(Duration.ofSeconds(evictInBackground))
+                .metrics(true);
+        switch (leasingStrategy) {
+            case "fifo":
+                builder.fifo();
+                break;
+            case "lifo":
+                builder.lifo();
+                break;
+            default:
+                throw new IllegalStateException("Unknown leasing strategy " + leasingStrategy + ", expected fifo or lifo");
+        }
+        return builder.build();
+    }
+
     @Bean
-    public WebClient defaultWebClient(JeapOAuth2WebclientBuilderFactory jeapOAuth2WebclientBuilderFactory) {
+    public WebClient defaultWebClient(JeapOAuth2WebclientBuilderFactory jeapOAuth2WebclientBuilderFactory,
+                                      ConnectionProvider managementServiceConnectionProvider) {
         // Config Timeout
-        HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = HttpClient.create(managementServiceConnectionProvider)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout * 1000)
                 .doOnConnected(conn -> conn
                         .addHandlerLast(new ReadTimeoutHandler(readTimeout)));
+        httpClient = configureProtocol(httpClient, serviceUri, http2Enabled)
+                .compress(compressionEnabled);
 
         ClientHttpConnector connector = new ReactorClientHttpConnector(httpClient.wiretap(false));
 
@@ -37,4 +105,18 @@ public class RestClientConfig {
                 .clientConnector(connector)
                 .build();
     }
+
+    /**
+     * With HTTP/2 enabled, the protocol is negotiated by ALPN for https and by an upgrade of the first request for http
+     * (h2c). Both fall back to HTTP/1.1 if the management service does not support HTTP/2.
+     */
+    static HttpClient configureProtocol(HttpClient httpClient, String serviceUri, boolean http2Enabled) {
+        if (!http2Enabled) {
+            return httpClient.protocol(HttpProtocol.HTTP11);
+        }
+        if ("https".equalsIgnoreCase(URI.create(serviceUri).getScheme())) {
+            return httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        return httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+    }
 }
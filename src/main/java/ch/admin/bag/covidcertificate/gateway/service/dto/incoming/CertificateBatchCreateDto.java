@@ -0,0 +1,19 @@
+package ch.admin.bag.covidcertificate.gateway.service.dto.incoming;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class CertificateBatchCreateDto<T extends CertificateCreateDto> implements DtoWithAuthorization {
+    @Schema(description = "OTP authorizing all certificates of the batch. The otp of the single certificates is ignored.")
+    private String otp;
+    @Schema(hidden = true)
+    private IdentityDto identity;
+    @Schema(description = "Certificates to create. The results are returned in the same order.")
+    private List<T> certificates;
+}
@@ -0,0 +1,13 @@
+package ch.admin.bag.covidcertificate.gateway.service.dto.incoming;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class CertificateBatchCreateResponseDto {
+    private List<CertificateBatchItemResponseDto> certificates;
+}
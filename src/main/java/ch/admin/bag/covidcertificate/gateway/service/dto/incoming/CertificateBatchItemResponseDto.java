@@ -0,0 +1,20 @@
+package ch.admin.bag.covidcertificate.gateway.service.dto.incoming;
+
+import ch.admin.bag.covidcertificate.gateway.error.RestError;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CertificateBatchItemResponseDto {
+    @Schema(description = "Index of the certificate in the request.")
+    private int index;
+    @Schema(description = "Created certificate, not set if the creation failed.")
+    private CovidCertificateCreateResponseDto certificate;
+    @Schema(description = "Error of the creation, not set if the certificate was created.")
+    private RestError error;
+}
@@ -0,0 +1,128 @@
+package ch.admin.bag.covidcertificate.gateway.service.util;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extracts the <code>uvci</code> of a certificate creation response while the response is passed through in chunks,
+ * without parsing or copying the Base64 encoded PDF and QR code. Only strings up to {@link #MAX_CAPTURED_LENGTH}
+ * bytes are captured, longer strings are skipped byte by byte. Not thread-safe, use one instance per response.
+ */
+public final class UvciScanner {
+
+    static final int MAX_CAPTURED_LENGTH = 128;
+    private static final byte[] UVCI_KEY = "uvci".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] captured = new byte[MAX_CAPTURED_LENGTH];
+    private int capturedLength;
+    private boolean overflow;
+    private boolean inString;
+    private boolean escaped;
+    private int depth;
+    private boolean lastStringIsUvciKey;
+    private boolean awaitingUvci;
+    private String uvci;
+
+    public void update(DataBuffer buffer) {
+        int end = buffer.writePosition();
+        for (int i = buffer.readPosition(); i < end && uvci == null; i++) {
+            update(buffer.getByte(i));
+        }
+    }
+
+    public void update(byte[] bytes) {
+        for (int i = 0; i < bytes.length && uvci == null; i++) {
+            update(bytes[i]);
+        }
+    }
+
+    /**
+     * @return the uvci of the top level object or <code>null</code> if it has not been scanned (yet)
+     */
+    public String getUvci() {
+        return uvci;
+    }
+
+    private void update(byte b) {
+        if (inString) {
+            updateString(b);
+            return;
+        }
+        switch (b) {
+            case '"':
+                inString = true;
+                capturedLength = 0;
+                overflow = false;
+                break;
+            case '{':
+            case '[':
+                depth++;
+                awaitingUvci = false;
+                break;
+            case '}':
+            case ']':
+                depth--;
+                awaitingUvci = false;
+                break;
+            case ':':
+                awaitingUvci = lastStringIsUvciKey;
+                break;
+            case ' ':
+            case '\n':
+            case '\r':
+            case '\t':
+                break;
+            default:
+                // a value that is not a string, e.g. null
+                awaitingUvci = false;
+                lastStringIsUvciKey = false;
+        }
+    }
+
+    private void updateString(byte b) {
+        if (escaped) {
+            escaped = false;
+            capture(b);
+        } else if (b == '\\') {
+            escaped = true;
+            capture(b);
+        } else if (b == '"') {
+            inString = false;
+            endString();
+        } else {
+            capture(b);
+        }
+    }
+
+    private void capture(byte b) {
+        if (capturedLength < MAX_CAPTURED_LENGTH) {
+            captured[capturedLength++] = b;
+        } else {
+            overflow = true;
+        }
+    }
+
+    private void endString() {
+        if (awaitingUvci) {
+            awaitingUvci = false;
+            if (!overflow) {
+                uvci = new String(captured, 0, capturedLength, StandardCharsets.UTF_8);
+            }
+        } else {
+            lastStringIsUvciKey = depth == 1 && !overflow && isUvciKey();
+        }
+    }
+
+    private boolean isUvciKey() {
+        if (capturedLength != UVCI_KEY.length) {
+            return false;
+        }
+        for (int i = 0; i < UVCI_KEY.length; i++) {
+            if (captured[i] != UVCI_KEY[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
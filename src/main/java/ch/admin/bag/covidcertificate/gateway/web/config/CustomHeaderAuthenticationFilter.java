@@ -17,7 +17,8 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 
 import static ch.admin.bag.covidcertificate.gateway.Constants.*;
-import static net.logstash.logback.argument.StructuredArguments.kv;
+import static ch.admin.bag.covidcertificate.gateway.logging.KpiLog.kv;
+import static ch.admin.bag.covidcertificate.gateway.logging.KpiLog.lazyKv;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -40,7 +41,7 @@ public class CustomHeaderAuthenticationFilter extends OncePerRequestFilter {
 
         String commonName = CNExtractor.extract(authorizationHeader);
 
-        log.info("Found '{}' from '{}'", kv("commonName", commonName), authorizationHeader);
+        log.info("Found {}", kv("commonName", commonName));
 
         String clientCert = request.getHeader("X-Client-Cert");
 
@@ -50,7 +51,7 @@ public class CustomHeaderAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
-        log.info("Found clientCert: '{}'", clientCert);
+        log.debug("Found clientCert {}", lazyKv("clientCertLength", clientCert::length));
 
         Authentication auth = new CustomHeaderAuthenticationToken(commonName, clientCert);
         SecurityContextHolder.getContext().setAuthentication(auth);
@@ -7,4 +7,5 @@ import lombok.NoArgsConstructor;
 public class ProfileRegistry {
 
     public static final String IDENTITY_AUTHORIZATION_MOCK = "mock-identity-authorization";
+    public static final String CERTIFICATE_CREATION_PASSTHROUGH = "passthrough-certificate-creation";
 }
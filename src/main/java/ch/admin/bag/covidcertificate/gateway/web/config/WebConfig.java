@@ -1,15 +1,43 @@
 package ch.admin.bag.covidcertificate.gateway.web.config;
 
+import ch.admin.bag.covidcertificate.gateway.filters.ClientCertificateKeyCache;
 import ch.admin.bag.covidcertificate.gateway.filters.IntegrityFilter;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    @Value("${cc-api-gateway-service.integrity.client-certificate-cache.max-size}")
+    private long clientCertificateCacheMaxSize;
+
+    @Value("${cc-api-gateway-service.integrity.client-certificate-cache.expire-after-access-seconds}")
+    private long clientCertificateCacheExpireAfterAccessSeconds;
+
+    @Value("${cc-api-gateway-service.metrics.stage-slo-millis}")
+    private long[] stageSloMillis;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Bean
+    public CertificateStageMetrics certificateStageMetrics() {
+        return new CertificateStageMetrics(meterRegistry, Arrays.stream(stageSloMillis)
+                .mapToObj(Duration::ofMillis)
+                .collect(Collectors.toList()));
+    }
+
     @Bean
     public FilterRegistrationBean<IntegrityFilter> integrityFilterRegistration() {
         FilterRegistrationBean<IntegrityFilter> registration = new FilterRegistrationBean<>();
@@ -21,7 +49,9 @@ public class WebConfig implements WebMvcConfigurer {
     }
 
     public IntegrityFilter integrityFilter() {
-        return new IntegrityFilter(new ObjectMapper());
+        var clientCertificateKeyCache = new ClientCertificateKeyCache(meterRegistry, clientCertificateCacheMaxSize,
+                Duration.ofSeconds(clientCertificateCacheExpireAfterAccessSeconds));
+        return new IntegrityFilter(new ObjectMapper(), clientCertificateKeyCache, certificateStageMetrics());
     }
 
 }
@@ -0,0 +1,154 @@
+package ch.admin.bag.covidcertificate.gateway.web.controller;
+
+import ch.admin.bag.covidcertificate.gateway.domain.TestType;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
+import ch.admin.bag.covidcertificate.gateway.service.KpiDataService;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.AntibodyCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryRatCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.TestCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationTouristCertificateCreateDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static ch.admin.bag.covidcertificate.gateway.Constants.ISO_3166_1_ALPHA_2_CODE_SWITZERLAND;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_CANTON;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_COUNTRY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_CREATE_CERTIFICATE_TYPE;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_DETAILS_KEY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_SYSTEM_API;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TIMESTAMP_KEY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_ANTIBODY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_INAPP_DELIVERY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_KEY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_RECOVERY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_RECOVERY_RAT;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_TEST;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION_TOURIST;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_UUID_KEY;
+import static ch.admin.bag.covidcertificate.gateway.Constants.LOG_FORMAT;
+import static ch.admin.bag.covidcertificate.gateway.logging.KpiLog.kv;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.AUTH_NONE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_FAILURE;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.OUTCOME_SUCCESS;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.STAGE_KPI;
+
+/**
+ * Logs and saves the KPI entries of a created certificate. Shared by the single and the batch creation endpoints.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CertificateCreationKpiLogger {
+
+    public static final String DETAILS_RAPID = "rapid";
+    public static final String DETAILS_ANTIBODY = "antibody";
+    public static final String DETAILS_PCR = "pcr";
+
+    private final KpiDataService kpiDataService;
+    private final CertificateStageMetrics stageMetrics;
+
+    public void logVaccination(VaccinationCertificateCreateDto createDto, String userExtId, String uvci) {
+        var vaccinationInfo = createDto.getVaccinationInfo().get(0);
+        logKpi(KPI_TYPE_VACCINATION, userExtId, createDto, uvci, vaccinationInfo.getMedicinalProductCode(), vaccinationInfo.getCountryOfVaccination());
+        if (vaccinationInfo.getNumberOfDoses() == 1 && vaccinationInfo.getTotalNumberOfDoses() == 1) {
+            log.info("fraud: {}", kv("risk", "1/1"));
+        }
+    }
+
+    public void logVaccinationTourist(VaccinationTouristCertificateCreateDto createDto, String userExtId, String uvci) {
+        var vaccinationTouristInfo = createDto.getVaccinationTouristInfo().get(0);
+        logKpi(KPI_TYPE_VACCINATION_TOURIST, userExtId, createDto, uvci, vaccinationTouristInfo.getMedicinalProductCode(), vaccinationTouristInfo.getCountryOfVaccination());
+        if (vaccinationTouristInfo.getNumberOfDoses() == 1 && vaccinationTouristInfo.getTotalNumberOfDoses() == 1) {
+            log.info("fraud: {}", kv("risk", "1/1"));
+        }
+    }
+
+    public void logTest(TestCertificateCreateDto createDto, String userExtId, String uvci) {
+        var testType = TestType.findByTypeCode(createDto.getTestInfo().get(0).getTypeCode());
+        logKpi(KPI_TYPE_TEST, userExtId, createDto, uvci, getDetails(testType), createDto.getTestInfo().get(0).getMemberStateOfTest());
+    }
+
+    public void logRecovery(RecoveryCertificateCreateDto createDto, String userExtId, String uvci) {
+        logKpi(KPI_TYPE_RECOVERY, userExtId, createDto, uvci, null, createDto.getRecoveryInfo().get(0).getCountryOfTest());
+    }
+
+    public void logRecoveryRat(RecoveryRatCertificateCreateDto createDto, String userExtId, String uvci) {
+        var testType = TestType.findByTypeCode(createDto.getTestInfo().get(0).getTypeCode());
+        logKpi(KPI_TYPE_RECOVERY_RAT, userExtId, createDto, uvci, getDetails(testType), ISO_3166_1_ALPHA_2_CODE_SWITZERLAND);
+    }
+
+    public void logAntibody(AntibodyCertificateCreateDto createDto, String userExtId, String uvci) {
+        logKpi(KPI_TYPE_ANTIBODY, userExtId, createDto, uvci, DETAILS_ANTIBODY, ISO_3166_1_ALPHA_2_CODE_SWITZERLAND);
+    }
+
+    private String getDetails(Optional<TestType> typeCode) {
+        String typeCodeDetailString = null;
+        if (typeCode.isPresent()) {
+            TestType foundTestType = typeCode.get();
+            switch (foundTestType) {
+                case PCR:
+                    typeCodeDetailString = DETAILS_PCR;
+                    break;
+                case RAPID_TEST:
+                    typeCodeDetailString = DETAILS_RAPID;
+                    break;
+            }
+        }
+        return typeCodeDetailString;
+    }
+
+    private void logKpi(String type, String userExtId, CertificateCreateDto createDto, String uvci, String details, String country) {
+        long start = System.nanoTime();
+        String outcome = OUTCOME_FAILURE;
+        try {
+            saveAndLogKpi(type, userExtId, createDto, uvci, details, country);
+            outcome = OUTCOME_SUCCESS;
+        } finally {
+            stageMetrics.record(STAGE_KPI, type, AUTH_NONE, outcome, start);
+        }
+    }
+
+    private void saveAndLogKpi(String type, String userExtId, CertificateCreateDto createDto, String uvci, String details, String country) {
+        LocalDateTime timestamp = LocalDateTime.now();
+        kpiDataService.saveKpiData(timestamp, type, userExtId, uvci, details, country);
+        var timestampKVPair = kv(KPI_TIMESTAMP_KEY, timestamp.format(LOG_FORMAT));
+        var systemKVPair = kv(KPI_CREATE_CERTIFICATE_TYPE, KPI_SYSTEM_API);
+        var typeKVPair = kv(KPI_TYPE_KEY, type);
+        var detailsKVPair = kv(KPI_DETAILS_KEY, details);
+        var kpiCountryKVPair = kv(KPI_COUNTRY, country);
+        var uuidKVPair = kv(KPI_UUID_KEY, userExtId);
+
+        if (createDto.getAddress() != null && createDto.getAddress().getCantonCodeSender() != null) {
+            var cantonKVPair = kv(KPI_CANTON, createDto.getAddress().getCantonCodeSender());
+            if (details == null) {
+                log.info("kpi: {} {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, uuidKVPair, cantonKVPair, kpiCountryKVPair);
+            } else {
+                log.info("kpi: {} {} {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, detailsKVPair, uuidKVPair, cantonKVPair, kpiCountryKVPair);
+            }
+            kpiDataService.saveKpiData(timestamp, KPI_CANTON, createDto.getAddress().getCantonCodeSender(), uvci, details, country);
+        } else if (StringUtils.hasText(createDto.getAppCode())) {
+            var inAppDeliveryTypeKVPair = kv(KPI_TYPE_KEY, KPI_TYPE_INAPP_DELIVERY);
+            if (details == null) {
+                log.info("kpi: {} {} {} {} {}", timestampKVPair, systemKVPair, inAppDeliveryTypeKVPair, uuidKVPair, kpiCountryKVPair);
+            } else {
+                log.info("kpi: {} {} {} {} {} {}", timestampKVPair, systemKVPair, inAppDeliveryTypeKVPair, detailsKVPair, uuidKVPair, kpiCountryKVPair);
+            }
+            kpiDataService.saveKpiData(timestamp, KPI_TYPE_INAPP_DELIVERY, userExtId, uvci, details, country);
+        } else {
+            if (details == null) {
+                log.info("kpi: {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, uuidKVPair, kpiCountryKVPair);
+            } else {
+                log.info("kpi: {} {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, detailsKVPair, uuidKVPair, kpiCountryKVPair);
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package ch.admin.bag.covidcertificate.gateway.web.controller;
+
+import ch.admin.bag.covidcertificate.gateway.error.RestError;
+import ch.admin.bag.covidcertificate.gateway.filters.IntegrityFilter;
+import ch.admin.bag.covidcertificate.gateway.service.AuthorizationService;
+import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateBatchGenerationService;
+import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateGenerationService;
+import ch.admin.bag.covidcertificate.gateway.service.InvalidBearerTokenException;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.AntibodyCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateBatchCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateBatchCreateResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateBatchItemResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryRatCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.TestCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationTouristCertificateCreateDto;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_BATCH_SIZE_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_BEARER_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER_ROLE_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_OTP_LENGTH_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_SIGNATURE_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MISSING_BEARER_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.SIGNATURE_PARSE_JSON;
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Creates several certificates of the same type with one request. The signature of the body and the authorization
+ * are checked once for the whole batch; validation and creation errors are returned per certificate.
+ */
+@Slf4j
+@RestController
+@RequestMapping(value = "api/v1/covidcertificate/batch")
+@RequiredArgsConstructor
+@ApiResponse(
+        responseCode = "200",
+        content = @Content(mediaType = "application/json", schema = @Schema(implementation = CertificateBatchCreateResponseDto.class))
+)
+@ApiResponse(
+        responseCode = "400",
+        content = @Content(
+                schema = @Schema(implementation = RestError.class),
+                mediaType = "application/json",
+                examples = {
+                        @ExampleObject(name = "INVALID_BATCH_SIZE", value = INVALID_BATCH_SIZE_JSON),
+                })
+)
+@ApiResponse(
+        responseCode = "403",
+        content = @Content(
+                schema = @Schema(implementation = RestError.class),
+                mediaType = "application/json",
+                examples = {
+                        @ExampleObject(name = "INVALID_BEARER", value = INVALID_BEARER_JSON),
+                        @ExampleObject(name = "MISSING_BEARER_JSON", value = MISSING_BEARER_JSON),
+                        @ExampleObject(name = "INVALID_SIGNATURE", value = INVALID_SIGNATURE_JSON),
+                        @ExampleObject(name = "SIGNATURE_PARSE_ERROR", value = SIGNATURE_PARSE_JSON),
+                        @ExampleObject(name = "INVALID_IDENTITY_USER", value = INVALID_IDENTITY_USER_JSON),
+                        @ExampleObject(name = "INVALID_IDENTITY_USER_ROLE", value = INVALID_IDENTITY_USER_ROLE_JSON),
+                        @ExampleObject(name = "INVALID_OTP_LENGTH", value = INVALID_OTP_LENGTH_JSON),
+                })
+)
+public class CovidCertificateBatchGenerationController {
+
+    private static final String BATCH_DESCRIPTION = "The certificates are created concurrently and returned in the order of the request. " +
+            "A certificate that cannot be created has an error instead of the certificate, the error codes are the same as for a single certificate. " +
+            "Performs one integrity check for the whole body and one authorization with the otp of the batch.";
+    private static final String STREAM_DESCRIPTION = "Same as the batch creation, but every result is written as one line of newline delimited JSON " +
+            "as soon as its certificate is created, in the order of completion. The index of a result refers to the certificate in the request. " +
+            "Requires the header `Accept: application/x-ndjson`.";
+
+    private final CovidCertificateGenerationService generationService;
+    private final CovidCertificateBatchGenerationService batchGenerationService;
+    private final AuthorizationService authorizationService;
+    private final CertificateCreationKpiLogger kpiLogger;
+
+    @PostMapping("/vaccination")
+    @Operation(operationId = "createVaccinationCertificates",
+            summary = "Creates vaccine certificates for the given data.",
+            description = BATCH_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<CertificateBatchCreateResponseDto> createVaccination(@RequestBody CertificateBatchCreateDto<VaccinationCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of batch create for vaccination certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.createCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logVaccination(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping("/vaccination-tourist")
+    @Operation(operationId = "createVaccinationTouristCertificates",
+            summary = "Creates WHO vaccination-tourist certificates for the given data.",
+            description = BATCH_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<CertificateBatchCreateResponseDto> createVaccinationTourist(@RequestBody CertificateBatchCreateDto<VaccinationTouristCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of batch create for WHO vaccination-tourist certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.createCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logVaccinationTourist(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping("/test")
+    @Operation(operationId = "createTestCertificates",
+            summary = "Creates test certificates for the given data.",
+            description = BATCH_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<CertificateBatchCreateResponseDto> createTest(@RequestBody CertificateBatchCreateDto<TestCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of batch create for test certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.createCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logTest(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping("/recovery")
+    @Operation(operationId = "createRecoveryCertificates",
+            summary = "Creates recovery certificates for the given data.",
+            description = BATCH_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<CertificateBatchCreateResponseDto> createRecovery(@RequestBody CertificateBatchCreateDto<RecoveryCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of batch create for recovery certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.createCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logRecovery(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping("/recovery-rat")
+    @Operation(operationId = "createRecoveryRatCertificates",
+            summary = "Creates Rapid-Antigen-Test (RAT) based recovery certificates for the given data.",
+            description = BATCH_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<CertificateBatchCreateResponseDto> createRecoveryRat(@RequestBody CertificateBatchCreateDto<RecoveryRatCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of batch create for recovery-rat certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.createCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logRecoveryRat(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping("/antibody")
+    @Operation(operationId = "createAntibodyCertificates",
+            summary = "Creates antibody certificates for the given data.",
+            description = BATCH_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<CertificateBatchCreateResponseDto> createAntibody(@RequestBody CertificateBatchCreateDto<AntibodyCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of batch create for antibody certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.createCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logAntibody(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping(value = "/vaccination", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(operationId = "streamVaccinationCertificates",
+            summary = "Creates vaccine certificates for the given data and streams the results.",
+            description = STREAM_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = CertificateBatchItemResponseDto.class)))
+    public Flux<CertificateBatchItemResponseDto> streamVaccination(@RequestBody CertificateBatchCreateDto<VaccinationCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of streaming batch create for vaccination certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.streamCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logVaccination(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping(value = "/vaccination-tourist", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(operationId = "streamVaccinationTouristCertificates",
+            summary = "Creates WHO vaccination-tourist certificates for the given data and streams the results.",
+            description = STREAM_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = CertificateBatchItemResponseDto.class)))
+    public Flux<CertificateBatchItemResponseDto> streamVaccinationTourist(@RequestBody CertificateBatchCreateDto<VaccinationTouristCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of streaming batch create for WHO vaccination-tourist certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.streamCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logVaccinationTourist(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping(value = "/test", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(operationId = "streamTestCertificates",
+            summary = "Creates test certificates for the given data and streams the results.",
+            description = STREAM_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = CertificateBatchItemResponseDto.class)))
+    public Flux<CertificateBatchItemResponseDto> streamTest(@RequestBody CertificateBatchCreateDto<TestCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of streaming batch create for test certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.streamCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logTest(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping(value = "/recovery", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(operationId = "streamRecoveryCertificates",
+            summary = "Creates recovery certificates for the given data and streams the results.",
+            description = STREAM_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = CertificateBatchItemResponseDto.class)))
+    public Flux<CertificateBatchItemResponseDto> streamRecovery(@RequestBody CertificateBatchCreateDto<RecoveryCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of streaming batch create for recovery certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.streamCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logRecovery(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping(value = "/recovery-rat", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(operationId = "streamRecoveryRatCertificates",
+            summary = "Creates Rapid-Antigen-Test (RAT) based recovery certificates for the given data and streams the results.",
+            description = STREAM_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = CertificateBatchItemResponseDto.class)))
+    public Flux<CertificateBatchItemResponseDto> streamRecoveryRat(@RequestBody CertificateBatchCreateDto<RecoveryRatCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of streaming batch create for recovery-rat certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.streamCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logRecoveryRat(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    @PostMapping(value = "/antibody", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(operationId = "streamAntibodyCertificates",
+            summary = "Creates antibody certificates for the given data and streams the results.",
+            description = STREAM_DESCRIPTION,
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = CertificateBatchItemResponseDto.class)))
+    public Flux<CertificateBatchItemResponseDto> streamAntibody(@RequestBody CertificateBatchCreateDto<AntibodyCertificateCreateDto> batchDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of streaming batch create for antibody certificates {}", kv("size", size(batchDto)));
+        String userExtId = authorizationService.validateAndGetId(batchDto, request.getRemoteAddr());
+
+        return batchGenerationService.streamCovidCertificates(batchDto.getCertificates(),
+                this::create,
+                (createDto, covidCertificate) -> kpiLogger.logAntibody(createDto, userExtId, covidCertificate.getUvci()));
+    }
+
+    private Mono<CovidCertificateCreateResponseDto> create(VaccinationCertificateCreateDto createDto) {
+        createDto.validate();
+        return generationService.createCovidCertificate(createDto);
+    }
+
+    private Mono<CovidCertificateCreateResponseDto> create(VaccinationTouristCertificateCreateDto createDto) {
+        createDto.validate();
+        return generationService.createCovidCertificate(createDto);
+    }
+
+    private Mono<CovidCertificateCreateResponseDto> create(TestCertificateCreateDto createDto) {
+        createDto.validate();
+        return generationService.createCovidCertificate(createDto);
+    }
+
+    private Mono<CovidCertificateCreateResponseDto> create(RecoveryCertificateCreateDto createDto) {
+        createDto.validate();
+        return generationService.createCovidCertificate(createDto);
+    }
+
+    private Mono<CovidCertificateCreateResponseDto> create(RecoveryRatCertificateCreateDto createDto) {
+        createDto.validate();
+        return generationService.createCovidCertificate(createDto);
+    }
+
+    private Mono<CovidCertificateCreateResponseDto> create(AntibodyCertificateCreateDto createDto) {
+        createDto.validate();
+        return generationService.createCovidCertificate(createDto);
+    }
+
+    private static int size(CertificateBatchCreateDto<?> batchDto) {
+        return batchDto.getCertificates() == null ? 0 : batchDto.getCertificates().size();
+    }
+}
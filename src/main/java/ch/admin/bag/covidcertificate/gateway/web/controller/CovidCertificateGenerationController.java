@@ -1,20 +1,18 @@
 package ch.admin.bag.covidcertificate.gateway.web.controller;
 
-import ch.admin.bag.covidcertificate.gateway.domain.TestType;
 import ch.admin.bag.covidcertificate.gateway.error.RestError;
 import ch.admin.bag.covidcertificate.gateway.filters.IntegrityFilter;
 import ch.admin.bag.covidcertificate.gateway.service.AuthorizationService;
 import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateGenerationService;
 import ch.admin.bag.covidcertificate.gateway.service.InvalidBearerTokenException;
-import ch.admin.bag.covidcertificate.gateway.service.KpiDataService;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.AntibodyCertificateCreateDto;
-import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateCreateDto;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryCertificateCreateDto;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryRatCertificateCreateDto;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.TestCertificateCreateDto;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationCertificateCreateDto;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationTouristCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.web.config.ProfileRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -24,35 +22,18 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.util.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 import javax.servlet.http.HttpServletRequest;
-import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.Optional;
 
-import static ch.admin.bag.covidcertificate.gateway.Constants.ISO_3166_1_ALPHA_2_CODE_SWITZERLAND;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_CANTON;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_COUNTRY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_CREATE_CERTIFICATE_TYPE;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_DETAILS_KEY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_SYSTEM_API;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TIMESTAMP_KEY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_ANTIBODY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_INAPP_DELIVERY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_KEY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_RECOVERY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_RECOVERY_RAT;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_TEST;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION_TOURIST;
-import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_UUID_KEY;
-import static ch.admin.bag.covidcertificate.gateway.Constants.LOG_FORMAT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_CONCURRENCY_LIMIT_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_TIMEOUT_JSON;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.DUPLICATE_DELIVERY_METHOD;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_ADDRESS;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_ANTIBODY_INFO_JSON;
@@ -83,16 +64,17 @@ import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_TEST
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_TYP_OF_TEST;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_VACCINATION_DATE;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_VACCINATION_INFO_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE_JSON;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MISSING_BEARER_JSON;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MISSING_RECOVERY_RAT_INFO_JSON;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.NO_PERSON_DATA;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.SIGNATURE_PARSE_JSON;
-import static net.logstash.logback.argument.StructuredArguments.kv;
 
 @Slf4j
 @RestController
 @RequestMapping(value = "api/v1/covidcertificate")
 @RequiredArgsConstructor
+@Profile("!" + ProfileRegistry.CERTIFICATE_CREATION_PASSTHROUGH)
 @ApiResponse(
         responseCode = "403",
         content = @Content(
@@ -108,15 +90,33 @@ import static net.logstash.logback.argument.StructuredArguments.kv;
                         @ExampleObject(name = "INVALID_OTP_LENGTH", value = INVALID_OTP_LENGTH_JSON),
                 })
 )
+@ApiResponse(
+        responseCode = "503",
+        content = @Content(
+                schema = @Schema(implementation = RestError.class),
+                mediaType = "application/json",
+                examples = {
+                        @ExampleObject(name = "CREATE_CERTIFICATE_CONCURRENCY_LIMIT", value = CREATE_CERTIFICATE_CONCURRENCY_LIMIT_JSON),
+                        @ExampleObject(name = "MANAGEMENT_SERVICE_UNAVAILABLE", value = MANAGEMENT_SERVICE_UNAVAILABLE_JSON),
+                })
+)
+@ApiResponse(
+        responseCode = "504",
+        content = @Content(
+                schema = @Schema(implementation = RestError.class),
+                mediaType = "application/json",
+                examples = {
+                        @ExampleObject(name = "CREATE_CERTIFICATE_TIMEOUT", value = CREATE_CERTIFICATE_TIMEOUT_JSON),
+                })
+)
 public class CovidCertificateGenerationController {
 
-    public static final String DETAILS_RAPID = "rapid";
-    public static final String DETAILS_ANTIBODY = "antibody";
-    public static final String DETAILS_PCR = "pcr";
-
     private final CovidCertificateGenerationService generationService;
     private final AuthorizationService authorizationService;
-    private final KpiDataService kpiDataService;
+    private final CertificateCreationKpiLogger kpiLogger;
+
+    @Value("${cc-api-gateway-service.certificate-creation.non-blocking}")
+    private boolean nonBlocking;
 
     @PostMapping("/vaccination")
     @Operation(operationId = "createVaccinationCertificate",
@@ -155,18 +155,13 @@ public class CovidCertificateGenerationController {
                     }
             )
     )
-    public CovidCertificateCreateResponseDto create(@RequestBody VaccinationCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+    public Mono<CovidCertificateCreateResponseDto> create(@RequestBody VaccinationCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
         log.info("Call of Create for vaccination certificate");
         String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
         createDto.validate();
 
-        CovidCertificateCreateResponseDto covidCertificate = generationService.createCovidCertificate(createDto);
-        logKpi(KPI_TYPE_VACCINATION, userExtId, createDto, covidCertificate.getUvci(), createDto.getVaccinationInfo().get(0).getMedicinalProductCode(), createDto.getVaccinationInfo().get(0).getCountryOfVaccination());
-        if (createDto.getVaccinationInfo().get(0).getNumberOfDoses() == 1 &&
-                createDto.getVaccinationInfo().get(0).getTotalNumberOfDoses() == 1) {
-            log.info("fraud: {}", kv("risk", "1/1"));
-        }
-        return covidCertificate;
+        return respond(generationService.createCovidCertificate(createDto)
+                .doOnNext(covidCertificate -> kpiLogger.logVaccination(createDto, userExtId, covidCertificate.getUvci())));
     }
 
     @PostMapping("/vaccination-tourist")
@@ -206,18 +201,13 @@ public class CovidCertificateGenerationController {
                     }
             )
     )
-    public CovidCertificateCreateResponseDto create(@RequestBody VaccinationTouristCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+    public Mono<CovidCertificateCreateResponseDto> create(@RequestBody VaccinationTouristCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
         log.info("Call of Create for WHO vaccination-tourist certificate");
         String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
         createDto.validate();
 
-        CovidCertificateCreateResponseDto covidCertificate = generationService.createCovidCertificate(createDto);
-        logKpi(KPI_TYPE_VACCINATION_TOURIST, userExtId, createDto, covidCertificate.getUvci(), createDto.getVaccinationTouristInfo().get(0).getMedicinalProductCode(), createDto.getVaccinationTouristInfo().get(0).getCountryOfVaccination());
-        if (createDto.getVaccinationTouristInfo().get(0).getNumberOfDoses() == 1 &&
-                createDto.getVaccinationTouristInfo().get(0).getTotalNumberOfDoses() == 1) {
-            log.info("fraud: {}", kv("risk", "1/1"));
-        }
-        return covidCertificate;
+        return respond(generationService.createCovidCertificate(createDto)
+                .doOnNext(covidCertificate -> kpiLogger.logVaccinationTourist(createDto, userExtId, covidCertificate.getUvci())));
     }
 
     @PostMapping("/test")
@@ -258,14 +248,13 @@ public class CovidCertificateGenerationController {
                     }
             )
     )
-    public CovidCertificateCreateResponseDto create(@RequestBody TestCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+    public Mono<CovidCertificateCreateResponseDto> create(@RequestBody TestCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
         log.info("Call of Create for test certificate");
         String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
         createDto.validate();
 
-        CovidCertificateCreateResponseDto covidCertificate = generationService.createCovidCertificate(createDto);
-        logTestCertificateGenerationKpi(createDto, userExtId, covidCertificate.getUvci());
-        return covidCertificate;
+        return respond(generationService.createCovidCertificate(createDto)
+                .doOnNext(covidCertificate -> kpiLogger.logTest(createDto, userExtId, covidCertificate.getUvci())));
     }
 
     @PostMapping("/recovery")
@@ -303,14 +292,13 @@ public class CovidCertificateGenerationController {
                     }
             )
     )
-    public CovidCertificateCreateResponseDto create(@RequestBody RecoveryCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+    public Mono<CovidCertificateCreateResponseDto> create(@RequestBody RecoveryCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
         log.info("Call of Create for recovery certificate");
         String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
         createDto.validate();
 
-        CovidCertificateCreateResponseDto covidCertificate = generationService.createCovidCertificate(createDto);
-        logKpi(KPI_TYPE_RECOVERY, userExtId, createDto, covidCertificate.getUvci(), null, createDto.getRecoveryInfo().get(0).getCountryOfTest());
-        return covidCertificate;
+        return respond(generationService.createCovidCertificate(createDto)
+                .doOnNext(covidCertificate -> kpiLogger.logRecovery(createDto, userExtId, covidCertificate.getUvci())));
     }
 
     @PostMapping("/recovery-rat")
@@ -347,14 +335,13 @@ public class CovidCertificateGenerationController {
                     }
             )
     )
-    public CovidCertificateCreateResponseDto create(@RequestBody RecoveryRatCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+    public Mono<CovidCertificateCreateResponseDto> create(@RequestBody RecoveryRatCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
         log.info("Call of Create for recovery-rat certificate");
         String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
         createDto.validate();
 
-        CovidCertificateCreateResponseDto covidCertificate = generationService.createCovidCertificate(createDto);
-        logRecoveryRatCertificateGenerationKpi(createDto, userExtId, covidCertificate.getUvci());
-        return covidCertificate;
+        return respond(generationService.createCovidCertificate(createDto)
+                .doOnNext(covidCertificate -> kpiLogger.logRecoveryRat(createDto, userExtId, covidCertificate.getUvci())));
     }
 
     @PostMapping("/antibody")
@@ -391,74 +378,24 @@ public class CovidCertificateGenerationController {
                     }
             )
     )
-    public CovidCertificateCreateResponseDto create(@RequestBody AntibodyCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+    public Mono<CovidCertificateCreateResponseDto> create(@RequestBody AntibodyCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
         log.info("Call of Create for recovery certificate");
         String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
         createDto.validate();
 
-        CovidCertificateCreateResponseDto covidCertificate = generationService.createCovidCertificate(createDto);
-        logKpi(KPI_TYPE_ANTIBODY, userExtId, createDto, covidCertificate.getUvci(), DETAILS_ANTIBODY, ISO_3166_1_ALPHA_2_CODE_SWITZERLAND);
-        return covidCertificate;
-    }
-
-    private String getDetails(Optional<TestType> typeCode) {
-        String typeCodeDetailString = null;
-        if (typeCode.isPresent()) {
-            TestType foundTestType = typeCode.get();
-            switch (foundTestType) {
-                case PCR:
-                    typeCodeDetailString = DETAILS_PCR;
-                    break;
-                case RAPID_TEST:
-                    typeCodeDetailString = DETAILS_RAPID;
-                    break;
-            }
-        }
-        return typeCodeDetailString;
+        return respond(generationService.createCovidCertificate(createDto)
+                .doOnNext(covidCertificate -> kpiLogger.logAntibody(createDto, userExtId, covidCertificate.getUvci())));
     }
 
-    public void logTestCertificateGenerationKpi(TestCertificateCreateDto createDto, String userExtId, String uvci) {
-        var testType = TestType.findByTypeCode(createDto.getTestInfo().get(0).getTypeCode());
-        logKpi(KPI_TYPE_TEST, userExtId, createDto, uvci, getDetails(testType), createDto.getTestInfo().get(0).getMemberStateOfTest());
-    }
-
-    public void logRecoveryRatCertificateGenerationKpi(RecoveryRatCertificateCreateDto createDto, String userExtId, String uvci) {
-        var testType = TestType.findByTypeCode(createDto.getTestInfo().get(0).getTypeCode());
-        logKpi(KPI_TYPE_RECOVERY_RAT, userExtId, createDto, uvci, getDetails(testType), ISO_3166_1_ALPHA_2_CODE_SWITZERLAND);
-    }
-
-    private void logKpi(String type, String userExtId, CertificateCreateDto createDto, String uvci, String details, String country) {
-        LocalDateTime timestamp = LocalDateTime.now();
-        kpiDataService.saveKpiData(timestamp, type, userExtId, uvci, details, country);
-        var timestampKVPair = kv(KPI_TIMESTAMP_KEY, timestamp.format(LOG_FORMAT));
-        var systemKVPair = kv(KPI_CREATE_CERTIFICATE_TYPE, KPI_SYSTEM_API);
-        var typeKVPair = kv(KPI_TYPE_KEY, type);
-        var detailsKVPair = kv(KPI_DETAILS_KEY, details);
-        var kpiCountryKVPair = kv(KPI_COUNTRY, country);
-        var uuidKVPair = kv(KPI_UUID_KEY, userExtId);
-
-        if (createDto.getAddress() != null && createDto.getAddress().getCantonCodeSender() != null) {
-            var cantonKVPair = kv(KPI_CANTON, createDto.getAddress().getCantonCodeSender());
-            if (details == null) {
-                log.info("kpi: {} {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, uuidKVPair, cantonKVPair, kpiCountryKVPair);
-            } else {
-                log.info("kpi: {} {} {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, detailsKVPair, uuidKVPair, cantonKVPair, kpiCountryKVPair);
-            }
-            kpiDataService.saveKpiData(timestamp, KPI_CANTON, createDto.getAddress().getCantonCodeSender(), uvci, details, country);
-        } else if (StringUtils.hasText(createDto.getAppCode())) {
-            var inAppDeliveryTypeKVPair = kv(KPI_TYPE_KEY, KPI_TYPE_INAPP_DELIVERY);
-            if (details == null) {
-                log.info("kpi: {} {} {} {} {}", timestampKVPair, systemKVPair, inAppDeliveryTypeKVPair, uuidKVPair, kpiCountryKVPair);
-            } else {
-                log.info("kpi: {} {} {} {} {} {}", timestampKVPair, systemKVPair, inAppDeliveryTypeKVPair, detailsKVPair, uuidKVPair, kpiCountryKVPair);
-            }
-            kpiDataService.saveKpiData(timestamp, KPI_TYPE_INAPP_DELIVERY, userExtId, uvci, details, country);
-        } else {
-            if (details == null) {
-                log.info("kpi: {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, uuidKVPair, kpiCountryKVPair);
-            } else {
-                log.info("kpi: {} {} {} {} {} {}", timestampKVPair, systemKVPair, typeKVPair, detailsKVPair, uuidKVPair, kpiCountryKVPair);
-            }
+    /**
+     * Returns the response of the management service as is if <code>certificate-creation.non-blocking</code> is
+     * enabled, so that the request thread is released while the certificate is created. Otherwise the request thread
+     * waits for the response and errors are thrown by the handler method.
+     */
+    private Mono<CovidCertificateCreateResponseDto> respond(Mono<CovidCertificateCreateResponseDto> response) {
+        if (nonBlocking) {
+            return response;
         }
+        return Mono.justOrEmpty(response.block());
     }
 }
@@ -0,0 +1,284 @@
+package ch.admin.bag.covidcertificate.gateway.web.controller;
+
+import ch.admin.bag.covidcertificate.gateway.error.RestError;
+import ch.admin.bag.covidcertificate.gateway.filters.IntegrityFilter;
+import ch.admin.bag.covidcertificate.gateway.service.AuthorizationService;
+import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateGenerationService;
+import ch.admin.bag.covidcertificate.gateway.service.InvalidBearerTokenException;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.AntibodyCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RecoveryRatCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.TestCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationTouristCertificateCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.util.UvciScanner;
+import ch.admin.bag.covidcertificate.gateway.web.config.ProfileRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_CONCURRENCY_LIMIT_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_TIMEOUT_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_BEARER_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER_ROLE_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_OTP_LENGTH_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_SIGNATURE_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MISSING_BEARER_JSON;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.SIGNATURE_PARSE_JSON;
+
+/**
+ * Replaces {@link CovidCertificateGenerationController} with the profile
+ * {@value ProfileRegistry#CERTIFICATE_CREATION_PASSTHROUGH}. The response of the management service is written to the
+ * client as it is received instead of being deserialized into a {@link CovidCertificateCreateResponseDto} and
+ * serialized again, so the Base64 encoded PDF and QR code are never decoded. The uvci needed for the KPI is scanned
+ * from the passing bytes by the {@link UvciScanner}. The request handling, validation and error responses are the same.
+ */
+@Slf4j
+@RestController
+@RequestMapping(value = "api/v1/covidcertificate")
+@RequiredArgsConstructor
+@Profile(ProfileRegistry.CERTIFICATE_CREATION_PASSTHROUGH)
+@ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = CovidCertificateCreateResponseDto.class)))
+@ApiResponse(
+        responseCode = "403",
+        content = @Content(
+                schema = @Schema(implementation = RestError.class),
+                mediaType = "application/json",
+                examples = {
+                        @ExampleObject(name = "INVALID_BEARER", value = INVALID_BEARER_JSON),
+                        @ExampleObject(name = "MISSING_BEARER_JSON", value = MISSING_BEARER_JSON),
+                        @ExampleObject(name = "INVALID_SIGNATURE", value = INVALID_SIGNATURE_JSON),
+                        @ExampleObject(name = "SIGNATURE_PARSE_ERROR", value = SIGNATURE_PARSE_JSON),
+                        @ExampleObject(name = "INVALID_IDENTITY_USER", value = INVALID_IDENTITY_USER_JSON),
+                        @ExampleObject(name = "INVALID_IDENTITY_USER_ROLE", value = INVALID_IDENTITY_USER_ROLE_JSON),
+                        @ExampleObject(name = "INVALID_OTP_LENGTH", value = INVALID_OTP_LENGTH_JSON),
+                })
+)
+@ApiResponse(
+        responseCode = "503",
+        content = @Content(
+                schema = @Schema(implementation = RestError.class),
+                mediaType = "application/json",
+                examples = {
+                        @ExampleObject(name = "CREATE_CERTIFICATE_CONCURRENCY_LIMIT", value = CREATE_CERTIFICATE_CONCURRENCY_LIMIT_JSON),
+                        @ExampleObject(name = "MANAGEMENT_SERVICE_UNAVAILABLE", value = MANAGEMENT_SERVICE_UNAVAILABLE_JSON),
+                })
+)
+@ApiResponse(
+        responseCode = "504",
+        content = @Content(
+                schema = @Schema(implementation = RestError.class),
+                mediaType = "application/json",
+                examples = {
+                        @ExampleObject(name = "CREATE_CERTIFICATE_TIMEOUT", value = CREATE_CERTIFICATE_TIMEOUT_JSON),
+                })
+)
+public class CovidCertificatePassthroughController {
+
+    private final CovidCertificateGenerationService generationService;
+    private final AuthorizationService authorizationService;
+    private final CertificateCreationKpiLogger kpiLogger;
+
+    @PostMapping("/vaccination")
+    @Operation(operationId = "createVaccinationCertificate",
+            summary = "Creates a vaccine certificate for the given data.",
+            description = "Creates a vaccine certificate as an QR-Code and PDF. Performs an integrity check for each request based on headers and body.",
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<ResponseEntity<ResponseBodyEmitter>> create(@RequestBody VaccinationCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of Create for vaccination certificate");
+        String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
+        createDto.validate();
+
+        return passthrough(generationService.streamCovidCertificate(createDto),
+                uvci -> kpiLogger.logVaccination(createDto, userExtId, uvci));
+    }
+
+    @PostMapping("/vaccination-tourist")
+    @Operation(operationId = "createVaccinationTouristCertificate",
+            summary = "Creates a WHO vaccination-tourist certificate for the given data.",
+            description = "Creates a WHO vaccination-tourist certificate as an QR-Code and PDF. Performs an integrity check for each request based on headers and body.",
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<ResponseEntity<ResponseBodyEmitter>> create(@RequestBody VaccinationTouristCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of Create for WHO vaccination-tourist certificate");
+        String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
+        createDto.validate();
+
+        return passthrough(generationService.streamCovidCertificate(createDto),
+                uvci -> kpiLogger.logVaccinationTourist(createDto, userExtId, uvci));
+    }
+
+    @PostMapping("/test")
+    @Operation(operationId = "createTestCertificate",
+            summary = "Creates a test certificate for the given data.",
+            description = "Creates a test certificate as an QR-Code and PDF. Performs an integrity check for each request based on headers and body.",
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            }
+    )
+    public Mono<ResponseEntity<ResponseBodyEmitter>> create(@RequestBody TestCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of Create for test certificate");
+        String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
+        createDto.validate();
+
+        return passthrough(generationService.streamCovidCertificate(createDto),
+                uvci -> kpiLogger.logTest(createDto, userExtId, uvci));
+    }
+
+    @PostMapping("/recovery")
+    @Operation(operationId = "createRecoveryCertificate",
+            summary = "Creates a recovery certificate for the given data.",
+            description = "Creates a recovery certificate as an QR-Code and PDF. Performs an integrity check for each request based on headers and body.",
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            })
+    public Mono<ResponseEntity<ResponseBodyEmitter>> create(@RequestBody RecoveryCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of Create for recovery certificate");
+        String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
+        createDto.validate();
+
+        return passthrough(generationService.streamCovidCertificate(createDto),
+                uvci -> kpiLogger.logRecovery(createDto, userExtId, uvci));
+    }
+
+    @PostMapping("/recovery-rat")
+    @Operation(operationId = "createRecoveryRatCertificate",
+            summary = "Creates a Rapid-Antigen-Test (RAT) based recovery certificate for the given data.",
+            description = "Creates a Rapid-Antigen-Test (RAT) based recovery certificate for the given data in form of a Pdf document and a QR-Code image.",
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            })
+    public Mono<ResponseEntity<ResponseBodyEmitter>> create(@RequestBody RecoveryRatCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of Create for recovery-rat certificate");
+        String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
+        createDto.validate();
+
+        return passthrough(generationService.streamCovidCertificate(createDto),
+                uvci -> kpiLogger.logRecoveryRat(createDto, userExtId, uvci));
+    }
+
+    @PostMapping("/antibody")
+    @Operation(operationId = "createAntibodyCertificate",
+            summary = "Creates an antibody certificate for the given data.",
+            description = "Creates an antibody certificate as a QR-Code and PDF. Performs an integrity check for each request based on headers and body.",
+            parameters = {
+                    @Parameter(in = ParameterIn.HEADER, name = IntegrityFilter.HEADER_HASH_NAME,
+                            required = true, description = "Base64 encoded hash of the canonicalized body, generated with the `SHA256withRSA` algorithm " +
+                            "signed with the private key of the certificate issued by \"SwissGov Regular CA 01\". " +
+                            "See [documentation](https://github.com/admin-ch/CovidCertificate-Apidoc#content-signature) on Github.",
+                            schema = @Schema(type = "string", format = "Base64")
+                    )
+            })
+    public Mono<ResponseEntity<ResponseBodyEmitter>> create(@RequestBody AntibodyCertificateCreateDto createDto, HttpServletRequest request) throws InvalidBearerTokenException {
+        log.info("Call of Create for antibody certificate");
+        String userExtId = authorizationService.validateAndGetId(createDto, request.getRemoteAddr());
+        createDto.validate();
+
+        return passthrough(generationService.streamCovidCertificate(createDto),
+                uvci -> kpiLogger.logAntibody(createDto, userExtId, uvci));
+    }
+
+    /**
+     * Errors of the management service are received before the body and are handled by
+     * {@link ResponseStatusExceptionHandler} as without passthrough. Once the body is written, the status is committed.
+     */
+    private Mono<ResponseEntity<ResponseBodyEmitter>> passthrough(Mono<Flux<DataBuffer>> certificate, Consumer<String> onCreated) {
+        return certificate.map(body -> ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(emit(body, onCreated)));
+    }
+
+    /**
+     * Sends the buffers of the body to the client as they are received. No thread is held while waiting for the
+     * management service; the buffers are written on the bounded elastic scheduler, as writing to the servlet response
+     * blocks while the client is slow. If the client disconnects, the body is cancelled.
+     */
+    static ResponseBodyEmitter emit(Flux<DataBuffer> body, Consumer<String> onCreated) {
+        var emitter = new ResponseBodyEmitter();
+        var uvciScanner = new UvciScanner();
+        Disposable subscription = body
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(uvciScanner::update)
+                .doOnComplete(() -> onCreated.accept(uvciScanner.getUvci()))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .subscribe(buffer -> send(emitter, buffer), e -> {
+                    // the container already ends the response if sending to the client failed
+                    if (!(e instanceof UncheckedIOException)) {
+                        emitter.completeWithError(e);
+                    }
+                }, emitter::complete);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        return emitter;
+    }
+
+    private static void send(ResponseBodyEmitter emitter, DataBuffer buffer) {
+        try {
+            var bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            emitter.send(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
@@ -29,7 +29,7 @@ import java.time.LocalDateTime;
 
 import static ch.admin.bag.covidcertificate.gateway.Constants.*;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.*;
-import static net.logstash.logback.argument.StructuredArguments.kv;
+import static ch.admin.bag.covidcertificate.gateway.logging.KpiLog.kv;
 
 @Slf4j
 @RestController
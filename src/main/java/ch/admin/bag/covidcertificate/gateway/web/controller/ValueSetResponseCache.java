@@ -0,0 +1,165 @@
+package ch.admin.bag.covidcertificate.gateway.web.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Holds the serialized JSON (and its gzip variant) of every value set together with a strong ETag. A value set is
+ * only serialized again when the value set service returns a different instance, so repeated requests are answered
+ * with the cached bytes without touching Jackson, and requests with a matching <code>If-None-Match</code> with 304.
+ * The serialized value sets are weakly keyed by the value set instance, so they are dropped together with the entries
+ * of the bounded value set cache.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ValueSetResponseCache {
+
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+    private static final String ANY_ENCODING = "*";
+    private static final String GZIP_ETAG_SUFFIX = "-" + GZIP;
+
+    private final ObjectMapper objectMapper;
+    private final Cache<Object, SerializedValueSet> serializedValueSets = Caffeine.newBuilder()
+            .weakKeys()
+            .build();
+
+    public ResponseEntity<byte[]> toResponse(String key, Object valueSet, HttpServletRequest request) {
+        var serializedValueSet = getSerializedValueSet(key, valueSet);
+        boolean gzip = acceptsGzip(request);
+        String eTag = gzip ? serializedValueSet.getGzipETag() : serializedValueSet.getETag();
+
+        if (matchesIfNoneMatch(request, serializedValueSet)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        var response = ResponseEntity.ok()
+                .eTag(eTag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(serializedValueSet.getGzipJson());
+        }
+        return response.body(serializedValueSet.getJson());
+    }
+
+    private SerializedValueSet getSerializedValueSet(String key, Object valueSet) {
+        return serializedValueSets.get(valueSet, v -> {
+            log.debug("Serializing value set {}", key);
+            return new SerializedValueSet(serialize(v));
+        });
+    }
+
+    private byte[] serialize(Object valueSet) {
+        try {
+            return objectMapper.writeValueAsBytes(valueSet);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize value set", e);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        return acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * @return whether the <code>Accept-Encoding</code> header lists <code>gzip</code> or, if not, <code>*</code> with a
+     * quality above 0
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return false;
+        }
+        boolean anyEncodingAccepted = false;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(coding) || X_GZIP.equalsIgnoreCase(coding)) {
+                return quality(parts) > 0;
+            }
+            if (ANY_ENCODING.equals(coding)) {
+                anyEncodingAccepted = quality(parts) > 0;
+            }
+        }
+        return anyEncodingAccepted;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static boolean matchesIfNoneMatch(HttpServletRequest request, SerializedValueSet serializedValueSet) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (!StringUtils.hasText(ifNoneMatch)) {
+            return false;
+        }
+        for (String eTag : ifNoneMatch.split(",")) {
+            String trimmed = eTag.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if ("*".equals(trimmed) || trimmed.equals(serializedValueSet.getETag()) || trimmed.equals(serializedValueSet.getGzipETag())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Getter
+    private static final class SerializedValueSet {
+        private final byte[] json;
+        private final byte[] gzipJson;
+        private final String eTag;
+        private final String gzipETag;
+
+        private SerializedValueSet(byte[] json) {
+            this.json = json;
+            this.gzipJson = gzip(json);
+            String hash = DigestUtils.md5DigestAsHex(json);
+            this.eTag = "\"" + hash + "\"";
+            this.gzipETag = "\"" + hash + GZIP_ETAG_SUFFIX + "\"";
+        }
+
+        private static byte[] gzip(byte[] json) {
+            var out = new ByteArrayOutputStream(json.length / 4);
+            try (var gzipOut = new GZIPOutputStream(out)) {
+                gzipOut.write(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+    }
+}
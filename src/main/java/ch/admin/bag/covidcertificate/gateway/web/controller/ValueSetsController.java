@@ -15,13 +15,14 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 
 @Slf4j
 @RestController
@@ -30,6 +31,7 @@ import java.util.List;
 public class ValueSetsController {
 
     private final ValueSetsService valueSetsService;
+    private final ValueSetResponseCache valueSetResponseCache;
 
     @GetMapping("/rapid-tests")
     @Operation(operationId = "rapidTests",
@@ -37,9 +39,9 @@ public class ValueSetsController {
             description = "Gets a list of all rapid tests based on the official list of the EU. Performs an integrity check for each request based on headers and body."
     )
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = RapidTestDto.class))))
-    public List<RapidTestDto> rapidTests() {
+    public ResponseEntity<byte[]> rapidTests(HttpServletRequest request) {
         log.info("Call of rapidTests for value sets");
-        return valueSetsService.getRapidTests();
+        return valueSetResponseCache.toResponse("rapid-tests", valueSetsService.getRapidTests(), request);
     }
 
     @GetMapping("/issuable-rapid-tests")
@@ -48,9 +50,9 @@ public class ValueSetsController {
             description = "Gets a list of all issuable rapid tests accepted by the BAG based on the official list of the EU. Performs an integrity check for each request based on headers and body."
     )
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = IssuableRapidTestDto.class))))
-    public List<IssuableRapidTestDto> issuableRapidTests() {
+    public ResponseEntity<byte[]> issuableRapidTests(HttpServletRequest request) {
         log.info("Call of issuableRapidTests for value sets");
-        return valueSetsService.getIssuableRapidTests();
+        return valueSetResponseCache.toResponse("issuable-rapid-tests", valueSetsService.getIssuableRapidTests(), request);
     }
 
     @GetMapping("/vaccines")
@@ -59,9 +61,9 @@ public class ValueSetsController {
             description = "Gets a list of all vaccines based on the official list of the EU. Performs an integrity check for each request based on headers and body."
     )
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = VaccineDto.class))))
-    public List<VaccineDto> vaccines() {
+    public ResponseEntity<byte[]> vaccines(HttpServletRequest request) {
         log.info("Call of vaccines for value sets");
-        return valueSetsService.getVaccines();
+        return valueSetResponseCache.toResponse("vaccines", valueSetsService.getVaccines(), request);
     }
 
     @GetMapping("/issuable-vaccines")
@@ -70,9 +72,10 @@ public class ValueSetsController {
             description = "Gets a list of all issuable vaccines accepted by the BAG based on the official list of the EU. Performs an integrity check for each request based on headers and body."
     )
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = IssuableVaccineDto.class))))
-    public List<IssuableVaccineDto> issuableVaccines() {
+    public ResponseEntity<byte[]> issuableVaccines(HttpServletRequest request) {
         log.info("Call of issuableVaccines for value sets with systemSource {}", SystemSource.ApiGateway);
-        return valueSetsService.getIssuableVaccines(SystemSource.ApiGateway);
+        return valueSetResponseCache.toResponse("issuable-vaccines/" + SystemSource.ApiGateway,
+                valueSetsService.getIssuableVaccines(SystemSource.ApiGateway), request);
     }
 
     @GetMapping("/issuable-vaccines/{systemSource}")
@@ -81,7 +84,7 @@ public class ValueSetsController {
                description = "Gets a list of all issuable vaccines accepted by the BAG based on the official list of the EU. Performs an integrity check for each request based on headers and body."
     )
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = IssuableVaccineDto.class))))
-    public List<IssuableVaccineDto> issuableVaccines(@PathVariable String systemSource) {
+    public ResponseEntity<byte[]> issuableVaccines(@PathVariable String systemSource, HttpServletRequest request) {
         final SystemSource localSystemSource;
         if(StringUtils.hasText(systemSource)) {
             localSystemSource = SystemSource.valueOf(systemSource);
@@ -89,7 +92,8 @@ public class ValueSetsController {
             localSystemSource = SystemSource.ApiGateway;
         }
         log.info("Call of issuableVaccines for value sets with systemSource {}", localSystemSource);
-        return valueSetsService.getIssuableVaccines(localSystemSource);
+        return valueSetResponseCache.toResponse("issuable-vaccines/" + localSystemSource,
+                valueSetsService.getIssuableVaccines(localSystemSource), request);
     }
 
     @GetMapping("/countries")
@@ -98,9 +102,9 @@ public class ValueSetsController {
             description = "Gets a list of all countryCodes for every supported language. Performs an integrity check for each request based on headers and body."
     )
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = CountryCodesDto.class))))
-    public CountryCodesDto countryCodes() {
+    public ResponseEntity<byte[]> countryCodes(HttpServletRequest request) {
         log.info("Call of getCountryCodes for value sets");
-        return valueSetsService.getCountryCodes();
+        return valueSetResponseCache.toResponse("countries", valueSetsService.getCountryCodes(), request);
     }
 
     @GetMapping("/countries/{language}")
@@ -109,8 +113,8 @@ public class ValueSetsController {
             description = "Gets a list of all countryCodes for a specific supported language. Performs an integrity check for each request based on headers and body."
     )
     @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = CountryCodeDto.class))))
-    public List<CountryCodeDto> countryCodeByLanguage(@PathVariable final String language) {
+    public ResponseEntity<byte[]> countryCodeByLanguage(@PathVariable final String language, HttpServletRequest request) {
         log.info("Call of getCountryCodesByLanguage for value sets");
-        return valueSetsService.getCountryCodesByLanguage(language);
+        return valueSetResponseCache.toResponse("countries/" + language, valueSetsService.getCountryCodesByLanguage(language), request);
     }
 }
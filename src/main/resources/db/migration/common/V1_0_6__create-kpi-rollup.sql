@@ -0,0 +1,10 @@
+create table if not exists kpi_rollup
+(
+    bucket timestamp not null,
+    type varchar not null,
+    details varchar(128) not null default '',
+    country varchar(2) not null default '',
+    canton varchar not null default '',
+    count bigint not null,
+    primary key (bucket, type, details, country, canton)
+);
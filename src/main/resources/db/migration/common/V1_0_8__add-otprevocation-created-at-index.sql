@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS idx_otprevocation_created_at ON otpRevocation (created_at);
@@ -0,0 +1,58 @@
+-- Replaces the kpi table by a table partitioned by month. The partitions are named kpi_yYYYYmMM and are created in
+-- advance by KpiPartitionService. The default partition only receives rows if no partition exists for their month.
+--
+-- All rows are copied in this one transaction, which holds an exclusive lock on kpi until it commits. KPI inserts and
+-- reports wait for the whole copy, so run it in a maintenance window; the duration can be estimated with a copy of
+-- the table, e.g. create table kpi_copy as select * from kpi. The lock timeout lets the migration fail instead of
+-- blocking all other statements on kpi while it waits for a running report.
+set local lock_timeout = '10s';
+
+alter table kpi rename to kpi_unpartitioned;
+alter table kpi_unpartitioned rename constraint kpi_pkey to kpi_unpartitioned_pkey;
+-- The date_trunc expression indexes of V1_0_1 are not created again, so that an insert only maintains the primary
+-- key and the BRIN index. Reports have to filter by a range of timestamp, which prunes partitions and uses the BRIN
+-- index, instead of by date_trunc('day', timestamp).
+drop index if exists idx_kpi_date_desc_type;
+drop index if exists idx_kpi_date_second_desc;
+
+create table kpi
+(
+    id        uuid      not null,
+    timestamp timestamp not null,
+    type      varchar   not null,
+    value     varchar   not null,
+    uvci      varchar(39),
+    details   varchar(128),
+    country   varchar(2),
+    primary key (id, timestamp)
+) partition by range (timestamp);
+
+create index idx_kpi_timestamp_brin on kpi using brin (timestamp);
+
+create table kpi_default partition of kpi default;
+
+do
+$$
+declare
+    partition_month date;
+    last_month      date;
+begin
+    select coalesce(date_trunc('month', min(timestamp)), date_trunc('month', now()))
+    into partition_month
+    from kpi_unpartitioned;
+    last_month := date_trunc('month', now()) + interval '3 months';
+    while partition_month <= last_month
+        loop
+            execute format('create table %I partition of kpi for values from (%L) to (%L)',
+                           'kpi_y' || to_char(partition_month, 'YYYY') || 'm' || to_char(partition_month, 'MM'),
+                           partition_month, (partition_month + interval '1 month')::date);
+            partition_month := partition_month + interval '1 month';
+        end loop;
+end
+$$;
+
+insert into kpi (id, timestamp, type, value, uvci, details, country)
+select id, timestamp, type, value, uvci, details, country
+from kpi_unpartitioned;
+
+drop table kpi_unpartitioned;
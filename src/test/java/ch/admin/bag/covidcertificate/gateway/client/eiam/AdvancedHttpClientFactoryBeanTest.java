@@ -0,0 +1,55 @@
+package ch.admin.bag.covidcertificate.gateway.client.eiam;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdvancedHttpClientFactoryBeanTest {
+
+    @Test
+    void givenPoolLimits_whenGetObject_thenConfiguresConnectionManager() throws Exception {
+        // given
+        var httpClientFactory = new AdvancedHttpClientFactoryBean();
+        httpClientFactory.setMaxConnTotal(10);
+        httpClientFactory.setMaxConnPerRoute(8);
+        // when
+        var httpClient = httpClientFactory.getObject();
+        // then
+        try {
+            assertEquals(10, httpClientFactory.getConnectionManager().getMaxTotal());
+            assertEquals(8, httpClientFactory.getConnectionManager().getDefaultMaxPerRoute());
+        } finally {
+            ((Closeable) httpClient).close();
+        }
+    }
+
+    @Test
+    void givenNoKeepAliveHeader_whenGetKeepAliveDuration_thenReturnsDefault() {
+        // given
+        var httpClientFactory = new AdvancedHttpClientFactoryBean();
+        httpClientFactory.setDefaultKeepAlive(30000);
+        var response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        // when
+        long keepAlive = httpClientFactory.keepAliveStrategy().getKeepAliveDuration(response, new BasicHttpContext());
+        // then
+        assertEquals(30000, keepAlive);
+    }
+
+    @Test
+    void givenKeepAliveHeader_whenGetKeepAliveDuration_thenReturnsHeaderValue() {
+        // given
+        var httpClientFactory = new AdvancedHttpClientFactoryBean();
+        httpClientFactory.setDefaultKeepAlive(30000);
+        var response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("Keep-Alive", "timeout=5, max=100");
+        // when
+        long keepAlive = httpClientFactory.keepAliveStrategy().getKeepAliveDuration(response, new BasicHttpContext());
+        // then
+        assertEquals(5000, keepAlive);
+    }
+}
@@ -30,6 +30,7 @@ class EIAMHealthIndicatorITTest {
     @Test
     void whenHealth_thenStatusUP() {
         // when
+        healthIndicator.probe();
         Health result = healthIndicator.health();
 
         //then
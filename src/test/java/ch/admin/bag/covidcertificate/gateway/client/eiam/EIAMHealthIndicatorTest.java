@@ -3,33 +3,52 @@ package ch.admin.bag.covidcertificate.gateway.client.eiam;
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.Client;
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.QueryClientsResponse;
 import com.flextrade.jfixture.JFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class EIAMHealthIndicatorTest {
     private final JFixture jFixture = new JFixture();
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @Mock
     public EIAMClient eiamClient;
-    @InjectMocks
     private EIAMHealthIndicator healthIndicator;
 
+    @BeforeEach
+    void initialize() {
+        healthIndicator = new EIAMHealthIndicator(eiamClient, meterRegistry);
+        ReflectionTestUtils.setField(healthIndicator, "maxAgeSeconds", 120L);
+    }
+
     @Test
     void givenClientExists_whenHealth_thenReturnsUP() {
         // given
         when(eiamClient.queryClient(any(String.class)))
                 .thenReturn(getQueryClientsResponse("GGG"));
         // when
+        healthIndicator.probe();
         Health result = healthIndicator.health();
         // then
         assertEquals(Status.UP, result.getStatus());
@@ -41,6 +60,7 @@ public class EIAMHealthIndicatorTest {
         when(eiamClient.queryClient(any(String.class)))
                 .thenReturn(new QueryClientsResponse());
         // when
+        healthIndicator.probe();
         Health result = healthIndicator.health();
         // then
         assertEquals(Status.DOWN, result.getStatus());
@@ -52,6 +72,7 @@ public class EIAMHealthIndicatorTest {
         when(eiamClient.queryClient(any(String.class)))
                 .thenReturn(getQueryClientsResponse(jFixture.create(String.class)));
         // when
+        healthIndicator.probe();
         Health result = healthIndicator.health();
         // then
         assertEquals(Status.DOWN, result.getStatus());
@@ -63,11 +84,81 @@ public class EIAMHealthIndicatorTest {
         when(eiamClient.queryClient(any(String.class)))
                 .thenThrow(RuntimeException.class);
         // when
+        healthIndicator.probe();
+        Health result = healthIndicator.health();
+        // then
+        assertEquals(Status.DOWN, result.getStatus());
+    }
+
+    @Test
+    void givenNoProbe_whenHealth_thenReturnsUNKNOWN() {
+        // when
+        Health result = healthIndicator.health();
+        // then
+        assertEquals(Status.UNKNOWN, result.getStatus());
+    }
+
+    @Test
+    void givenProbed_whenHealthIsCalledRepeatedly_thenCallsEIAMOnce() {
+        // given
+        when(eiamClient.queryClient(any(String.class)))
+                .thenReturn(getQueryClientsResponse("GGG"));
+        healthIndicator.probe();
+        // when
+        healthIndicator.health();
+        Health result = healthIndicator.health();
+        // then
+        assertEquals(Status.UP, result.getStatus());
+        assertNotNull(result.getDetails().get("lastSuccess"));
+        verify(eiamClient, times(1)).queryClient(any(String.class));
+    }
+
+    @Test
+    void givenLastProbeTooOld_whenHealth_thenReturnsDOWN() {
+        // given
+        when(eiamClient.queryClient(any(String.class)))
+                .thenReturn(getQueryClientsResponse("GGG"));
+        healthIndicator.probe();
+        ReflectionTestUtils.setField(healthIndicator, "lastProbe", Instant.now().minusSeconds(121));
+        // when
         Health result = healthIndicator.health();
         // then
         assertEquals(Status.DOWN, result.getStatus());
     }
 
+    @Test
+    void whenProbe_thenRecordsLatency() {
+        // given
+        when(eiamClient.queryClient(any(String.class)))
+                .thenReturn(getQueryClientsResponse("GGG"));
+        // when
+        healthIndicator.probe();
+        // then
+        assertEquals(1, meterRegistry.get("eiam.health.probe").tag("status", "UP").timer().count());
+    }
+
+    @Test
+    void whenInit_thenProbesOnOwnThread() throws InterruptedException {
+        // given
+        var probeThread = new AtomicReference<String>();
+        var probed = new CountDownLatch(1);
+        when(eiamClient.queryClient(any(String.class))).thenAnswer(invocation -> {
+            probeThread.set(Thread.currentThread().getName());
+            probed.countDown();
+            return getQueryClientsResponse("GGG");
+        });
+        ReflectionTestUtils.setField(healthIndicator, "probeInterval", 60000L);
+        // when
+        healthIndicator.init();
+        try {
+            assertTrue(probed.await(5, TimeUnit.SECONDS));
+        } finally {
+            healthIndicator.shutdown();
+        }
+        // then
+        assertEquals("eiam-health-probe", probeThread.get());
+    }
+
     private QueryClientsResponse getQueryClientsResponse(String clientName) {
         var queryClientsResponse = new QueryClientsResponse();
         var clients = queryClientsResponse.getReturns();
@@ -0,0 +1,68 @@
+package ch.admin.bag.covidcertificate.gateway.client.eiam;
+
+import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.Client;
+import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.ClientQuery;
+import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.QueryClients;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PooledJaxb2MarshallerTest {
+
+    private final AtomicInteger createdMarshallers = new AtomicInteger();
+    private final AtomicInteger createdUnmarshallers = new AtomicInteger();
+    private PooledJaxb2Marshaller marshaller;
+
+    @BeforeEach
+    void initialize() throws Exception {
+        marshaller = new PooledJaxb2Marshaller(2) {
+            @Override
+            public Marshaller createMarshaller() {
+                createdMarshallers.incrementAndGet();
+                return super.createMarshaller();
+            }
+
+            @Override
+            public Unmarshaller createUnmarshaller() {
+                createdUnmarshallers.incrementAndGet();
+                return super.createUnmarshaller();
+            }
+        };
+        marshaller.setContextPath("ch.admin.bag.covidcertificate.gateway.eiam.adminservice");
+        marshaller.afterPropertiesSet();
+    }
+
+    @Test
+    void givenSequentialCalls_whenMarshalAndUnmarshal_thenReusesInstances() {
+        // given
+        var request = getQueryClients("GGG");
+        // when
+        QueryClients result = null;
+        for (int i = 0; i < 3; i++) {
+            var domResult = new DOMResult();
+            marshaller.marshal(request, domResult);
+            result = (QueryClients) marshaller.unmarshal(new DOMSource(domResult.getNode()));
+        }
+        // then
+        assertEquals("GGG", result.getQuery().getClient().getName());
+        assertEquals(1, createdMarshallers.get());
+        assertEquals(1, createdUnmarshallers.get());
+    }
+
+    private QueryClients getQueryClients(String clientName) {
+        var client = new Client();
+        client.setName(clientName);
+        var clientQuery = new ClientQuery();
+        clientQuery.setClient(client);
+        var queryClients = new QueryClients();
+        queryClients.setQuery(clientQuery);
+        return queryClients;
+    }
+}
@@ -0,0 +1,65 @@
+package ch.admin.bag.covidcertificate.gateway.client.eiam;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SamplingPayloadValidatingInterceptorTest {
+
+    private static final String INVALID_RESPONSE = "<ns:queryUsersResponse xmlns:ns=\"http://adnovum.ch/nevisidm/ws/services/v1\"><unknown/></ns:queryUsersResponse>";
+
+    @Test
+    void givenSampleRateOne_whenHandleInvalidResponse_thenRejectsResponse() throws Exception {
+        // given
+        var interceptor = createInterceptor(1.0);
+        var messageContext = createMessageContext(INVALID_RESPONSE);
+        // when
+        boolean result = interceptor.handleResponse(messageContext);
+        // then
+        assertFalse(result);
+    }
+
+    @Test
+    void givenSampleRateZero_whenHandleInvalidResponse_thenSkipsValidation() throws Exception {
+        // given
+        var interceptor = createInterceptor(0.0);
+        var messageContext = createMessageContext(INVALID_RESPONSE);
+        // when
+        boolean result = interceptor.handleResponse(messageContext);
+        // then
+        assertTrue(result);
+    }
+
+    @Test
+    void givenSampleRateAboveOne_whenCreate_thenThrows() {
+        assertThrows(IllegalArgumentException.class, () -> new SamplingPayloadValidatingInterceptor(1.5));
+    }
+
+    private SamplingPayloadValidatingInterceptor createInterceptor(double sampleRate) throws Exception {
+        var interceptor = new SamplingPayloadValidatingInterceptor(sampleRate);
+        interceptor.setSchema(new ClassPathResource("eiam/nevisidm_servicetypes_v1_43.xsd"));
+        interceptor.setValidateRequest(false);
+        interceptor.setValidateResponse(true);
+        interceptor.afterPropertiesSet();
+        return interceptor;
+    }
+
+    private MessageContext createMessageContext(String responsePayload) throws Exception {
+        var messageFactory = new SaajSoapMessageFactory(MessageFactory.newInstance());
+        var messageContext = new DefaultMessageContext(messageFactory);
+        TransformerFactory.newInstance().newTransformer().transform(
+                new StreamSource(new StringReader(responsePayload)), messageContext.getResponse().getPayloadResult());
+        return messageContext;
+    }
+}
@@ -2,6 +2,8 @@ package ch.admin.bag.covidcertificate.gateway.client.internal;
 
 import ch.admin.bag.covidcertificate.gateway.client.eiam.EIAMClient;
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.QueryUsersResponse;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.core.io.ClassPathResource;
@@ -10,6 +12,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -19,7 +22,7 @@ public class DefaultIdentityAuthorizationClientProfileTest {
 
     @BeforeEach
     void beforeEach() {
-        authorizationClient = new DefaultIdentityAuthorizationClient(new EIAMClient());
+        authorizationClient = new DefaultIdentityAuthorizationClient(new EIAMClient(), new SimpleMeterRegistry(), new CertificateStageMetrics(new SimpleMeterRegistry(), List.of()));
     }
 
     @Test
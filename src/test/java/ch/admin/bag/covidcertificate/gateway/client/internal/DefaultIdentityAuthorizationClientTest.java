@@ -2,14 +2,18 @@ package ch.admin.bag.covidcertificate.gateway.client.internal;
 
 import ch.admin.bag.covidcertificate.gateway.client.eiam.EIAMClient;
 import ch.admin.bag.covidcertificate.gateway.eiam.adminservice.*;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
 import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateException;
 import com.flextrade.jfixture.JFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
 
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_IDENTITY_USER_ROLE;
@@ -27,13 +31,19 @@ class DefaultIdentityAuthorizationClientTest {
     
     @Mock
     public EIAMClient eiamClient;
-    @InjectMocks
     private DefaultIdentityAuthorizationClient client;
 
     @BeforeEach
     private void initialize() {
         uuid = jFixture.create(String.class);
         ipdSource = jFixture.create(String.class);
+        client = new DefaultIdentityAuthorizationClient(eiamClient, new SimpleMeterRegistry(), new CertificateStageMetrics(new SimpleMeterRegistry(), List.of()));
+        ReflectionTestUtils.setField(client, "positiveTtlSeconds", 60L);
+        ReflectionTestUtils.setField(client, "negativeTtlSeconds", 60L);
+        ReflectionTestUtils.setField(client, "maxSize", 100L);
+        ReflectionTestUtils.setField(client, "refreshAfterSeconds", 0L);
+        ReflectionTestUtils.setField(client, "refreshThreads", 1);
+        client.init();
     }
 
     @Test
@@ -92,6 +102,57 @@ class DefaultIdentityAuthorizationClientTest {
         assertEquals(runtimeException, exception);
     }
 
+    @Test
+    void givenUserExists_whenAuthorizeTwice_thenQueriesOnce() {
+        // given
+        when(eiamClient.queryUser(any(String.class), any(String.class), any(String.class)))
+                .thenReturn(getQueryUsersResponse("9500.GGG-Covidcertificate.CertificateCreator"));
+        // when
+        client.authorize(uuid, ipdSource);
+        client.authorize(uuid, ipdSource);
+        // then
+        verify(eiamClient, times(1)).queryUser(any(String.class), any(String.class), any(String.class));
+    }
+
+    @Test
+    void givenUserNotExists_whenAuthorizeTwice_thenQueriesOnce() {
+        // given
+        when(eiamClient.queryUser(any(String.class), any(String.class), any(String.class)))
+                .thenReturn(new QueryUsersResponse());
+        // when
+        assertThrows(CreateCertificateException.class, () -> client.authorize(uuid, ipdSource));
+        CreateCertificateException exception = assertThrows(CreateCertificateException.class,
+                () -> client.authorize(uuid, ipdSource));
+        // then
+        assertEquals(INVALID_IDENTITY_USER, exception.getError());
+        verify(eiamClient, times(1)).queryUser(any(String.class), any(String.class), any(String.class));
+    }
+
+    @Test
+    void givenNegativeTtlIsZero_whenAuthorizeTwice_thenQueriesTwice() {
+        // given
+        ReflectionTestUtils.setField(client, "negativeTtlSeconds", 0L);
+        when(eiamClient.queryUser(any(String.class), any(String.class), any(String.class)))
+                .thenReturn(new QueryUsersResponse());
+        // when
+        assertThrows(CreateCertificateException.class, () -> client.authorize(uuid, ipdSource));
+        assertThrows(CreateCertificateException.class, () -> client.authorize(uuid, ipdSource));
+        // then
+        verify(eiamClient, times(2)).queryUser(any(String.class), any(String.class), any(String.class));
+    }
+
+    @Test
+    void givenExceptionIsThrown_whenAuthorizeTwice_thenQueriesTwice() {
+        // given
+        when(eiamClient.queryUser(any(String.class), any(String.class), any(String.class)))
+                .thenThrow(new RuntimeException());
+        // when
+        assertThrows(RuntimeException.class, () -> client.authorize(uuid, ipdSource));
+        assertThrows(RuntimeException.class, () -> client.authorize(uuid, ipdSource));
+        // then
+        verify(eiamClient, times(2)).queryUser(any(String.class), any(String.class), any(String.class));
+    }
+
     @Test
     void throwsExceptionOnAuthorize__ifUuidIsEmptyString() {
         CreateCertificateException exception = assertThrows(CreateCertificateException.class,
@@ -0,0 +1,40 @@
+package ch.admin.bag.covidcertificate.gateway.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeOrderedUuidGeneratorTest {
+
+    @Test
+    void next_hasVersion7AndIetfVariant() {
+        UUID uuid = TimeOrderedUuidGenerator.next();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void next_containsCurrentTime() {
+        long before = System.currentTimeMillis();
+        UUID uuid = TimeOrderedUuidGenerator.next();
+
+        long time = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(time >= before);
+        // the time part runs ahead by one millisecond per 4096 ids generated within the same millisecond
+        assertTrue(time <= before + 1000);
+    }
+
+    @Test
+    void next_isStrictlyIncreasingInUnsignedByteOrder() {
+        UUID previous = TimeOrderedUuidGenerator.next();
+        for (int i = 0; i < 10_000; i++) {
+            UUID next = TimeOrderedUuidGenerator.next();
+            assertTrue(Long.compareUnsigned(next.getMostSignificantBits(), previous.getMostSignificantBits()) > 0);
+            previous = next;
+        }
+    }
+}
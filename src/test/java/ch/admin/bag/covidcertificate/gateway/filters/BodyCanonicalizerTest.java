@@ -0,0 +1,55 @@
+package ch.admin.bag.covidcertificate.gateway.filters;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodyCanonicalizerTest {
+    private static KeyPair keyPair;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
+        keyPairGen.initialize(2048);
+        keyPair = keyPairGen.generateKeyPair();
+    }
+
+    @Test
+    void update_matchesStrippedBody() throws Exception {
+        assertVerifies("{\n  \"name\": \"Müller Zoë\",\r\n\t\"dateOfBirth\": \"2000-05-10\"\n}");
+    }
+
+    @Test
+    void update_matchesStrippedBodyLargerThanChunk() throws Exception {
+        var json = new StringBuilder("[\n");
+        for (int i = 0; i < BodyCanonicalizer.CHUNK_SIZE; i++) {
+            json.append("  {\"familyName\": \"Hans\", \"givenName\": \"Muster\"},\n");
+        }
+        json.append("  {}\n]");
+        assertVerifies(json.toString());
+    }
+
+    @Test
+    void update_acceptsEmptyBody() throws Exception {
+        assertVerifies("");
+    }
+
+    private void assertVerifies(String json) throws Exception {
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(json.replaceAll("[\\n\\r\\t ]", "").getBytes(StandardCharsets.UTF_8));
+        byte[] signature = signer.sign();
+
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(keyPair.getPublic());
+        BodyCanonicalizer.update(verifier, json.getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(verifier.verify(signature));
+    }
+}
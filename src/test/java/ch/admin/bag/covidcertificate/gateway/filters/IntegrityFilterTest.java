@@ -1,6 +1,8 @@
 package ch.admin.bag.covidcertificate.gateway.filters;
 
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,8 +19,11 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.CertificateException;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
 class IntegrityFilterTest {
@@ -60,6 +65,7 @@ class IntegrityFilterTest {
     private final HttpServletResponse response = mock(HttpServletResponse.class);
     private final MockFilterChain mockFilterChain = mock(MockFilterChain.class);
     private final ObjectMapper mockObjectMapper = mock(ObjectMapper.class);
+    private SimpleMeterRegistry meterRegistry;
 
     @BeforeAll
     public static void setUpTests() throws NoSuchAlgorithmException, CertificateException, OperatorCreationException {
@@ -74,7 +80,10 @@ class IntegrityFilterTest {
 
     @BeforeEach
     public void setUp() throws IOException {
-        this.integrityFilter = new IntegrityFilter(mockObjectMapper);
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.integrityFilter = new IntegrityFilter(mockObjectMapper,
+                new ClientCertificateKeyCache(meterRegistry, 10, Duration.ofMinutes(1)),
+                new CertificateStageMetrics(meterRegistry, List.of()));
         reset(request, response, mockFilterChain);
 
         // recreate input stream for request
@@ -129,6 +138,23 @@ class IntegrityFilterTest {
         verify(response, never()).setContentType(MediaType.APPLICATION_JSON_VALUE);
     }
 
+    @Test
+    void testClientCertificateParsedOnce() throws Exception {
+        byte[] signature = getSignature();
+
+        when(request.getHeader(keyHeaderName)).thenReturn(certificateString);
+        when(request.getHeader(hashHeaderName)).thenReturn(Base64.getEncoder().encodeToString(signature));
+
+        integrityFilter.doFilterInternal(request, response, mockFilterChain);
+        InputStream inputStream = new ByteArrayInputStream(testJson.getBytes());
+        when(request.getInputStream()).thenReturn(new DelegatingServletInputStream(inputStream));
+        integrityFilter.doFilterInternal(request, response, mockFilterChain);
+
+        verify(mockFilterChain, times(2)).doFilter(any(), any());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
     @Test
     void testWithOtherBody() throws Exception {
         byte[] signature = getSignature();
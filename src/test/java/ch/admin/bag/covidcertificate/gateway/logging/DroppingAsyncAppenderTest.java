@@ -0,0 +1,60 @@
+package ch.admin.bag.covidcertificate.gateway.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DroppingAsyncAppenderTest {
+
+    @Test
+    void givenFullQueue_whenAppend_thenEventsAreDroppedAndCounted() throws InterruptedException {
+        // given
+        var loggerContext = new LoggerContext();
+        var blockingAppender = new BlockingAppender();
+        blockingAppender.setContext(loggerContext);
+        blockingAppender.start();
+        var appender = new DroppingAsyncAppender();
+        appender.setContext(loggerContext);
+        appender.setQueueSize(1);
+        appender.addAppender(blockingAppender);
+        appender.start();
+        appender.doAppend(event(loggerContext, "taken by the worker"));
+        assertTrue(blockingAppender.entered.await(5, TimeUnit.SECONDS));
+        // when
+        appender.doAppend(event(loggerContext, "queued"));
+        appender.doAppend(event(loggerContext, "dropped"));
+        appender.doAppend(event(loggerContext, "dropped"));
+        // then
+        assertEquals(2, appender.getDroppedCount());
+        blockingAppender.release.countDown();
+        appender.stop();
+    }
+
+    private ILoggingEvent event(LoggerContext loggerContext, String message) {
+        return new LoggingEvent(getClass().getName(), loggerContext.getLogger("kpi-test"), Level.INFO, message, null, null);
+    }
+
+    private static class BlockingAppender extends AppenderBase<ILoggingEvent> {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
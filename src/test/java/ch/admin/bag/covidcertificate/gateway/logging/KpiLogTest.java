@@ -0,0 +1,38 @@
+package ch.admin.bag.covidcertificate.gateway.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KpiLogTest {
+
+    @Test
+    void kv_shortValueIsKept() {
+        assertEquals("cert=CN=test", KpiLog.kv("cert", "CN=test").toString());
+    }
+
+    @Test
+    void kv_longValueIsCapped() {
+        var value = "x".repeat(KpiLog.MAX_VALUE_LENGTH + 100);
+
+        var capped = KpiLog.kv("cert", value).toString();
+
+        assertEquals("cert=".length() + KpiLog.MAX_VALUE_LENGTH, capped.length());
+        assertTrue(capped.endsWith(KpiLog.TRUNCATED_SUFFIX));
+    }
+
+    @Test
+    void lazyKv_valueIsComputedOnceWhenFormatted() {
+        var calls = new AtomicInteger();
+
+        var argument = KpiLog.lazyKv("length", calls::incrementAndGet);
+        assertEquals(0, calls.get());
+
+        assertEquals("length=1", argument.toString());
+        assertEquals("length=1", argument.toString());
+        assertEquals(1, calls.get());
+    }
+}
@@ -5,6 +5,7 @@ import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.DtoWithAuthori
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.IdentityDto;
 import ch.admin.bag.covidcertificate.gateway.web.config.CustomHeaderAuthenticationToken;
 import com.flextrade.jfixture.JFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.security.core.context.SecurityContext;
@@ -35,7 +36,7 @@ class AuthorizationServiceTest {
         this.bearerTokenValidationService = mock(BearerTokenValidationService.class);
         this.identityAuthorizationClient = mock(IdentityAuthorizationClient.class);
         this.dtoWithAuthorization = this.getDtoWithAuthorization(false, false);
-        this.authorizationService = new AuthorizationService(bearerTokenValidationService, identityAuthorizationClient);
+        this.authorizationService = new AuthorizationService(bearerTokenValidationService, identityAuthorizationClient, new CertificateStageMetrics(new SimpleMeterRegistry(), List.of()));
         this.ipAddress = fixure.create(String.class);
     }
 
@@ -0,0 +1,67 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_TEST;
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION;
+import static ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CertificateStageMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CertificateStageMetrics stageMetrics = new CertificateStageMetrics(meterRegistry,
+            List.of(Duration.ofMillis(10), Duration.ofMillis(100)));
+
+    @Test
+    void typeOfPath_certificateType() {
+        assertEquals(KPI_TYPE_VACCINATION, typeOfPath("/api/v1/covidcertificate/vaccination"));
+        assertEquals(KPI_TYPE_TEST, typeOfPath("/api/v1/covidcertificate/test"));
+    }
+
+    @Test
+    void typeOfPath_batchType() {
+        assertEquals(KPI_TYPE_VACCINATION + TYPE_BATCH_SUFFIX, typeOfPath("/api/v1/covidcertificate/batch/vaccination"));
+        assertEquals(KPI_TYPE_TEST + TYPE_BATCH_SUFFIX, typeOfPath("/api/v1/covidcertificate/batch/test"));
+    }
+
+    @Test
+    void typeOfPath_otherPath() {
+        assertEquals(TYPE_NONE, typeOfPath("/api/v1/revocation"));
+        assertEquals(TYPE_NONE, typeOfPath(null));
+    }
+
+    @Test
+    void record_registersTimerOncePerTags() {
+        stageMetrics.record(STAGE_AUTHORIZATION, TYPE_NONE, AUTH_OTP, OUTCOME_SUCCESS, System.nanoTime());
+        stageMetrics.record(STAGE_AUTHORIZATION, TYPE_NONE, AUTH_OTP, OUTCOME_SUCCESS, System.nanoTime());
+        stageMetrics.record(STAGE_AUTHORIZATION, TYPE_NONE, AUTH_OTP, OUTCOME_FAILURE, System.nanoTime());
+
+        assertEquals(2, meterRegistry.get(METRIC_NAME).tag("outcome", OUTCOME_SUCCESS).timer().count());
+        assertEquals(1, meterRegistry.get(METRIC_NAME).tag("outcome", OUTCOME_FAILURE).timer().count());
+        assertEquals(2, meterRegistry.get(METRIC_NAME).timers().size());
+    }
+
+    @Test
+    void time_recordsOutcomeOnSubscription() {
+        var success = stageMetrics.time(STAGE_MANAGEMENT_SERVICE, KPI_TYPE_TEST, Mono.just("ok"));
+        var failure = stageMetrics.time(STAGE_MANAGEMENT_SERVICE, KPI_TYPE_TEST, Mono.error(new IllegalStateException()));
+        assertEquals(0, meterRegistry.find(METRIC_NAME).timers().size());
+
+        success.block();
+        assertThrows(IllegalStateException.class, failure::block);
+
+        assertEquals(1, meterRegistry.get(METRIC_NAME)
+                .tags("stage", STAGE_MANAGEMENT_SERVICE, "type", KPI_TYPE_TEST, "outcome", OUTCOME_SUCCESS)
+                .timer().count());
+        assertEquals(1, meterRegistry.get(METRIC_NAME)
+                .tags("stage", STAGE_MANAGEMENT_SERVICE, "type", KPI_TYPE_TEST, "outcome", OUTCOME_FAILURE)
+                .timer().count());
+    }
+}
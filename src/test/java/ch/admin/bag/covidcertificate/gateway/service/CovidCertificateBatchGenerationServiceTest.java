@@ -0,0 +1,179 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateException;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationCertificateCreateDto;
+import com.flextrade.jfixture.JFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_FAILED;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_TIMEOUT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_BATCH_SIZE;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_VACCINATION_INFO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CovidCertificateBatchGenerationServiceTest {
+
+    private static final JFixture fixture = new JFixture();
+
+    private CovidCertificateBatchGenerationService batchGenerationService;
+
+    @BeforeEach
+    void initialize() {
+        batchGenerationService = new CovidCertificateBatchGenerationService();
+        ReflectionTestUtils.setField(batchGenerationService, "maxSize", 5);
+        ReflectionTestUtils.setField(batchGenerationService, "concurrency", 2);
+        ReflectionTestUtils.setField(batchGenerationService, "timeoutSeconds", 30);
+        ReflectionTestUtils.setField(batchGenerationService, "asyncRequestTimeout", Duration.ofSeconds(95));
+    }
+
+    @Test
+    void init_acceptsBatchThatEndsBeforeAsyncTimeout() {
+        // 3 rounds of 2 calls of 30 seconds each
+        batchGenerationService.init();
+    }
+
+    @Test
+    void init_failsIfBatchMayOutlastAsyncTimeout() {
+        ReflectionTestUtils.setField(batchGenerationService, "asyncRequestTimeout", Duration.ofSeconds(90));
+
+        assertThrows(IllegalStateException.class, () -> batchGenerationService.init());
+    }
+
+    @Test
+    void returnsResultsInOrderOfRequest() {
+        var createDtos = createDtos(3);
+        var certificates = new ArrayList<CovidCertificateCreateResponseDto>();
+        for (int i = 0; i < 3; i++) {
+            certificates.add(fixture.create(CovidCertificateCreateResponseDto.class));
+        }
+
+        var response = batchGenerationService.createCovidCertificates(createDtos,
+                createDto -> {
+                    int index = createDtos.indexOf(createDto);
+                    // the first certificate is returned last
+                    return Mono.just(certificates.get(index)).delayElement(Duration.ofMillis(index == 0 ? 100 : 0));
+                },
+                (createDto, certificate) -> {
+                }).block();
+
+        assertEquals(3, response.getCertificates().size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, response.getCertificates().get(i).getIndex());
+            assertEquals(certificates.get(i).getUvci(), response.getCertificates().get(i).getCertificate().getUvci());
+            assertNull(response.getCertificates().get(i).getError());
+        }
+    }
+
+    @Test
+    void streamsResultsInOrderOfCompletion() {
+        var createDtos = createDtos(3);
+
+        var items = batchGenerationService.streamCovidCertificates(createDtos,
+                createDto -> {
+                    int index = createDtos.indexOf(createDto);
+                    // the first certificate is created last
+                    return Mono.just(fixture.create(CovidCertificateCreateResponseDto.class)).delayElement(Duration.ofMillis(index == 0 ? 100 : 0));
+                },
+                (createDto, certificate) -> {
+                }).collectList().block();
+
+        assertEquals(3, items.size());
+        assertEquals(0, items.get(2).getIndex());
+    }
+
+    @Test
+    void returnsErrorPerItem() {
+        var createDtos = createDtos(4);
+
+        var response = batchGenerationService.createCovidCertificates(createDtos,
+                createDto -> {
+                    switch (createDtos.indexOf(createDto)) {
+                        case 0:
+                            throw new CreateCertificateException(INVALID_VACCINATION_INFO);
+                        case 1:
+                            return Mono.error(new CreateCertificateException(CREATE_CERTIFICATE_TIMEOUT));
+                        case 2:
+                            return Mono.error(new IllegalStateException("Response Body is null"));
+                        default:
+                            return Mono.just(fixture.create(CovidCertificateCreateResponseDto.class));
+                    }
+                },
+                (createDto, certificate) -> {
+                }).block();
+
+        var items = response.getCertificates();
+        assertEquals(INVALID_VACCINATION_INFO, items.get(0).getError());
+        assertEquals(CREATE_CERTIFICATE_TIMEOUT, items.get(1).getError());
+        assertEquals(CREATE_CERTIFICATE_FAILED, items.get(2).getError());
+        assertNull(items.get(3).getError());
+    }
+
+    @Test
+    void callsOnCreatedOnlyForCreatedCertificates() {
+        var createDtos = createDtos(2);
+        var created = new AtomicInteger();
+
+        batchGenerationService.createCovidCertificates(createDtos,
+                createDto -> createDtos.indexOf(createDto) == 0
+                        ? Mono.just(fixture.create(CovidCertificateCreateResponseDto.class))
+                        : Mono.error(new CreateCertificateException(CREATE_CERTIFICATE_TIMEOUT)),
+                (createDto, certificate) -> created.incrementAndGet()).block();
+
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void limitsConcurrentCalls() {
+        var createDtos = createDtos(5);
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+
+        batchGenerationService.createCovidCertificates(createDtos,
+                createDto -> Mono.defer(() -> {
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            return Mono.just(fixture.create(CovidCertificateCreateResponseDto.class));
+                        })
+                        .delayElement(Duration.ofMillis(20))
+                        // before the result is passed on and the next call is subscribed
+                        .doOnTerminate(inFlight::decrementAndGet),
+                (createDto, certificate) -> {
+                }).block();
+
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    void throwsOnEmptyOrTooLargeBatch() {
+        var tooLarge = createDtos(6);
+        List<VaccinationCertificateCreateDto> empty = Collections.emptyList();
+
+        var exception = assertThrows(CreateCertificateException.class, () -> batchGenerationService.createCovidCertificates(tooLarge,
+                createDto -> Mono.empty(), (createDto, certificate) -> {
+                }));
+        assertEquals(INVALID_BATCH_SIZE, exception.getError());
+        assertThrows(CreateCertificateException.class, () -> batchGenerationService.createCovidCertificates(empty,
+                createDto -> Mono.empty(), (createDto, certificate) -> {
+                }));
+    }
+
+    private static List<VaccinationCertificateCreateDto> createDtos(int count) {
+        var createDtos = new ArrayList<VaccinationCertificateCreateDto>();
+        for (int i = 0; i < count; i++) {
+            createDtos.add(fixture.create(VaccinationCertificateCreateDto.class));
+        }
+        return createDtos;
+    }
+}
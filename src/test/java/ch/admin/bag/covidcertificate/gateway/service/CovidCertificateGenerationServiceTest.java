@@ -11,6 +11,8 @@ import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationTou
 import ch.admin.bag.covidcertificate.gateway.web.config.CustomHeaderAuthenticationToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flextrade.jfixture.JFixture;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
@@ -27,7 +29,11 @@ import org.springframework.web.reactive.function.client.WebClient;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_CONCURRENCY_LIMIT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_TIMEOUT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -38,6 +44,7 @@ class CovidCertificateGenerationServiceTest {
     static final ObjectMapper objectMapper = new ObjectMapper();
     static MockWebServer mockManagementService;
 
+    private CircuitBreaker circuitBreaker;
     private CovidCertificateGenerationService generationService;
 
     @BeforeAll
@@ -48,10 +55,14 @@ class CovidCertificateGenerationServiceTest {
 
     @BeforeEach
     void initialize() {
-        this.generationService = new CovidCertificateGenerationService(WebClient.create());
+        this.circuitBreaker = CircuitBreaker.ofDefaults("cc-management-service");
+        this.generationService = new CovidCertificateGenerationService(WebClient.create(), circuitBreaker, new CertificateStageMetrics(new SimpleMeterRegistry(), List.of()));
         ReflectionTestUtils.setField(this.generationService, "serviceURL",
                 String.format("http://localhost:%s/", mockManagementService.getPort()));
         ReflectionTestUtils.setField(this.generationService, "allowedCommonNamesForSystemSource", List.of("cn-authorized"));
+        ReflectionTestUtils.setField(this.generationService, "timeoutSeconds", 5L);
+        ReflectionTestUtils.setField(this.generationService, "maxConcurrentRequests", 10);
+        this.generationService.init();
     }
 
     @Test
@@ -63,7 +74,7 @@ class CovidCertificateGenerationServiceTest {
                 .addHeader("Content-Type", "application/json"));
 
         var createDto = fixture.create(VaccinationCertificateCreateDto.class);
-        var response = generationService.createCovidCertificate(createDto);
+        var response = generationService.createCovidCertificate(createDto).block();
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiGateway\""));
@@ -83,7 +94,7 @@ class CovidCertificateGenerationServiceTest {
 
         var createDto = fixture.create(VaccinationCertificateCreateDto.class);
         createDto.setSystemSource(SystemSource.ApiPlatform);
-        var response = generationService.createCovidCertificate(createDto);
+        var response = generationService.createCovidCertificate(createDto).block();
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiPlatform\""));
@@ -103,7 +114,7 @@ class CovidCertificateGenerationServiceTest {
 
         var createDto = fixture.create(VaccinationCertificateCreateDto.class);
         createDto.setSystemSource(SystemSource.ApiPlatform);
-        var response = generationService.createCovidCertificate(createDto);
+        var response = generationService.createCovidCertificate(createDto).block();
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiGateway\""));
@@ -122,7 +133,7 @@ class CovidCertificateGenerationServiceTest {
                 .addHeader("Content-Type", "application/json"));
 
         var createDto = fixture.create(VaccinationTouristCertificateCreateDto.class);
-        var response = generationService.createCovidCertificate(createDto);
+        var response = generationService.createCovidCertificate(createDto).block();
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiGateway\""));
@@ -141,7 +152,7 @@ class CovidCertificateGenerationServiceTest {
                 .addHeader("Content-Type", "application/json"));
 
         var createDto = fixture.create(TestCertificateCreateDto.class);
-        var response = generationService.createCovidCertificate(createDto);
+        var response = generationService.createCovidCertificate(createDto).block();
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiGateway\""));
@@ -160,7 +171,7 @@ class CovidCertificateGenerationServiceTest {
                 .addHeader("Content-Type", "application/json"));
 
         var createDto = fixture.create(RecoveryCertificateCreateDto.class);
-        var response = generationService.createCovidCertificate(createDto);
+        var response = generationService.createCovidCertificate(createDto).block();
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiGateway\""));
@@ -180,7 +191,7 @@ class CovidCertificateGenerationServiceTest {
                 .addHeader("Content-Type", "application/json"));
 
         var createDto = fixture.create(VaccinationCertificateCreateDto.class);
-        assertThrows(CreateCertificateException.class, () -> generationService.createCovidCertificate(createDto));
+        assertThrows(CreateCertificateException.class, () -> generationService.createCovidCertificate(createDto).block());
     }
 
     @Test
@@ -193,7 +204,7 @@ class CovidCertificateGenerationServiceTest {
                 .addHeader("Content-Type", "application/json"));
 
         var createDto = fixture.create(VaccinationCertificateCreateDto.class);
-        assertThrows(CreateCertificateException.class, () -> generationService.createCovidCertificate(createDto));
+        assertThrows(CreateCertificateException.class, () -> generationService.createCovidCertificate(createDto).block());
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiGateway\""));
@@ -207,12 +218,61 @@ class CovidCertificateGenerationServiceTest {
                 .addHeader("Content-Type", "application/json"));
 
         var createDto = fixture.create(VaccinationCertificateCreateDto.class);
-        assertThrows(IllegalStateException.class, () -> generationService.createCovidCertificate(createDto));
+        assertThrows(IllegalStateException.class, () -> generationService.createCovidCertificate(createDto).block());
 
         String recordedRequest = mockManagementService.takeRequest().getBody().readString(Charset.defaultCharset());
         assertTrue(recordedRequest.contains("\"systemSource\":\"ApiGateway\""));
     }
 
+    @Test
+    void throwsCreateException__ifResponseTimesOut() throws Exception {
+        setCommonName("cn-not-authorized");
+        ReflectionTestUtils.setField(this.generationService, "timeoutSeconds", 1L);
+        var mockResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
+        mockManagementService.enqueue(new MockResponse()
+                .setHeadersDelay(3, TimeUnit.SECONDS)
+                .setBody(objectMapper.writeValueAsString(mockResponseDto))
+                .addHeader("Content-Type", "application/json"));
+
+        var createDto = fixture.create(VaccinationCertificateCreateDto.class);
+        var exception = assertThrows(CreateCertificateException.class, () -> generationService.createCovidCertificate(createDto).block());
+        assertEquals(CREATE_CERTIFICATE_TIMEOUT, exception.getError());
+        mockManagementService.takeRequest();
+    }
+
+    @Test
+    void throwsCreateException__ifConcurrencyLimitIsReached() {
+        setCommonName("cn-not-authorized");
+        ReflectionTestUtils.setField(this.generationService, "maxConcurrentRequests", 0);
+        this.generationService.init();
+
+        var createDto = fixture.create(VaccinationCertificateCreateDto.class);
+        var exception = assertThrows(CreateCertificateException.class, () -> generationService.createCovidCertificate(createDto).block());
+        assertEquals(CREATE_CERTIFICATE_CONCURRENCY_LIMIT, exception.getError());
+    }
+
+    @Test
+    void throwsCreateException__ifCircuitBreakerIsOpen() {
+        setCommonName("cn-not-authorized");
+        circuitBreaker.transitionToOpenState();
+        var requestCount = mockManagementService.getRequestCount();
+
+        var createDto = fixture.create(VaccinationCertificateCreateDto.class);
+        var exception = assertThrows(CreateCertificateException.class, () -> generationService.createCovidCertificate(createDto).block());
+        assertEquals(MANAGEMENT_SERVICE_UNAVAILABLE, exception.getError());
+        assertEquals(requestCount, mockManagementService.getRequestCount());
+    }
+
+    @Test
+    void doesNotCallManagementService__untilSubscribed() {
+        setCommonName("cn-not-authorized");
+        var requestCount = mockManagementService.getRequestCount();
+
+        generationService.createCovidCertificate(fixture.create(VaccinationCertificateCreateDto.class));
+
+        assertEquals(requestCount, mockManagementService.getRequestCount());
+    }
+
     @AfterAll
     static void tearDown() throws IOException {
         mockManagementService.shutdown();
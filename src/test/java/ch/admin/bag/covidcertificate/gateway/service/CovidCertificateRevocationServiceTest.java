@@ -6,6 +6,9 @@ import ch.admin.bag.covidcertificate.gateway.service.dto.RevokeCertificateExcept
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.RevocationDto;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flextrade.jfixture.JFixture;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterAll;
@@ -17,8 +20,13 @@ import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.io.IOException;
+import java.time.Duration;
 
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_CONCURRENCY_LIMIT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE;
+import static ch.admin.bag.covidcertificate.gateway.service.config.ManagementServiceResilienceConfig.REVOCATION_BULKHEAD;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class CovidCertificateRevocationServiceTest {
@@ -27,6 +35,8 @@ class CovidCertificateRevocationServiceTest {
     static final ObjectMapper objectMapper = new ObjectMapper();
     static MockWebServer mockManagementService;
 
+    private CircuitBreaker circuitBreaker;
+    private BulkheadRegistry bulkheadRegistry;
     private CovidCertificateRevocationService revocationService;
 
     @BeforeAll
@@ -37,9 +47,12 @@ class CovidCertificateRevocationServiceTest {
 
     @BeforeEach
     void initialize() {
-        this.revocationService = new CovidCertificateRevocationService(WebClient.create());
+        this.circuitBreaker = CircuitBreaker.ofDefaults("cc-management-service");
+        this.bulkheadRegistry = BulkheadRegistry.ofDefaults();
+        this.revocationService = new CovidCertificateRevocationService(WebClient.create(), circuitBreaker, bulkheadRegistry);
         ReflectionTestUtils.setField(this.revocationService, "serviceUri",
                 String.format("http://localhost:%s/", mockManagementService.getPort()));
+        this.revocationService.init();
     }
 
     @Test
@@ -77,6 +90,31 @@ class CovidCertificateRevocationServiceTest {
         assertThrows(RevokeCertificateException.class, () -> revocationService.createRevocation(createDto));
     }
 
+    @Test
+    void throwsRevokeException__ifCircuitBreakerIsOpen() {
+        circuitBreaker.transitionToOpenState();
+        var requestCount = mockManagementService.getRequestCount();
+
+        var createDto = fixture.create(RevocationDto.class);
+        var exception = assertThrows(RevokeCertificateException.class, () -> revocationService.createRevocation(createDto));
+        assertEquals(MANAGEMENT_SERVICE_UNAVAILABLE, exception.getError());
+        assertEquals(requestCount, mockManagementService.getRequestCount());
+    }
+
+    @Test
+    void throwsRevokeException__ifConcurrencyLimitIsReached() {
+        bulkheadRegistry.remove(REVOCATION_BULKHEAD);
+        bulkheadRegistry.bulkhead(REVOCATION_BULKHEAD, BulkheadConfig.custom()
+                .maxConcurrentCalls(0)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        this.revocationService.init();
+
+        var createDto = fixture.create(RevocationDto.class);
+        var exception = assertThrows(RevokeCertificateException.class, () -> revocationService.createRevocation(createDto));
+        assertEquals(MANAGEMENT_SERVICE_CONCURRENCY_LIMIT, exception.getError());
+    }
+
     @AfterAll
     static void tearDown() throws IOException {
         mockManagementService.shutdown();
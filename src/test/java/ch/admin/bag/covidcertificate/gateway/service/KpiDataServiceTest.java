@@ -0,0 +1,190 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KpiDataServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private KpiDataService service;
+
+    @BeforeEach
+    void initialize() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new KpiDataService(jdbcTemplate, meterRegistry);
+        ReflectionTestUtils.setField(service, "queueCapacity", 3);
+        ReflectionTestUtils.setField(service, "batchSize", 100);
+        ReflectionTestUtils.setField(service, "shutdownTimeoutSeconds", 1);
+        ReflectionTestUtils.setField(service, "retryMaxAttempts", 3);
+        ReflectionTestUtils.setField(service, "retryBackoff", 1L);
+        ReflectionTestUtils.setField(service, "rawEnabled", true);
+        ReflectionTestUtils.setField(service, "rollupEnabled", false);
+        ReflectionTestUtils.setField(service, "rollupBucket", ChronoUnit.HOURS);
+        service.init();
+    }
+
+    @Test
+    void saveKpiData_doesNotWriteOnCallingThread() {
+        service.saveKpiData(LocalDateTime.now(), "cn", "test", null, null, null);
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(1, meterRegistry.get("cc.kpi.queue.size").gauge().value());
+    }
+
+    @Test
+    void flush_writesQueuedEntriesInBatch() {
+        service.saveKpiData(LocalDateTime.now(), "cn", "test", null, null, null);
+        service.saveKpiData(LocalDateTime.now(), "cc", "test", "uvci", null, "CH");
+
+        service.flush();
+
+        verify(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(2, meterRegistry.get("cc.kpi.queue.written").counter().count());
+        assertEquals(0, meterRegistry.get("cc.kpi.queue.size").gauge().value());
+    }
+
+    @Test
+    void saveKpiData_dropsEntriesWhenQueueIsFull() {
+        for (int i = 0; i < 5; i++) {
+            service.saveKpiData(LocalDateTime.now(), "cn", "test", null, null, null);
+        }
+
+        assertEquals(2, meterRegistry.get("cc.kpi.queue.dropped").counter().count());
+        assertEquals(3, meterRegistry.get("cc.kpi.queue.size").gauge().value());
+    }
+
+    @Test
+    void flush_countsFailedEntriesAfterLastAttempt() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("test"));
+        service.saveKpiData(LocalDateTime.now(), "cn", "test", null, null, null);
+
+        service.flush();
+
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(2, meterRegistry.get("cc.kpi.queue.retried").counter().count());
+        assertEquals(1, meterRegistry.get("cc.kpi.queue.failed").counter().count());
+        assertEquals(0, meterRegistry.get("cc.kpi.queue.written").counter().count());
+    }
+
+    @Test
+    void flush_retriesBatchAfterTransientError() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("test"))
+                .thenReturn(new int[0][]);
+        service.saveKpiData(LocalDateTime.now(), "cn", "test", null, null, null);
+        service.saveKpiData(LocalDateTime.now(), "cc", "test", "uvci", null, "CH");
+
+        service.flush();
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(0, meterRegistry.get("cc.kpi.queue.failed").counter().count());
+        assertEquals(2, meterRegistry.get("cc.kpi.queue.written").counter().count());
+    }
+
+    @Test
+    void shutdown_drainsQueue() throws InterruptedException {
+        service.saveKpiData(LocalDateTime.now(), "cn", "test", null, null, null);
+
+        service.shutdown();
+
+        assertEquals(1, meterRegistry.get("cc.kpi.queue.written").counter().count());
+    }
+
+    @Test
+    void flushRollup_writesOneRowPerBucketAndKey() {
+        enableRollupOnly();
+        var timestamp = LocalDateTime.now();
+        service.saveKpiData(timestamp, "v", "user", "uvci1", null, "CH");
+        service.saveKpiData(timestamp, "v", "user", "uvci2", null, "CH");
+        service.saveKpiData(timestamp, "p", "BE", "uvci3", null, "CH");
+
+        service.flushRollup();
+
+        assertEquals(2, captureRollupWrites(1).get(0).size());
+        assertEquals(2, meterRegistry.get("cc.kpi.rollup.written").counter().count());
+        assertEquals(0, meterRegistry.get("cc.kpi.queue.size").gauge().value());
+    }
+
+    @Test
+    void flushRollup_writesOnlyNewCounts() {
+        enableRollupOnly();
+        service.saveKpiData(LocalDateTime.now(), "v", "user", "uvci1", null, "CH");
+        service.flushRollup();
+
+        service.flushRollup();
+
+        captureRollupWrites(1);
+    }
+
+    @Test
+    void flushRollup_retriesFailedCounts() {
+        enableRollupOnly();
+        when(jdbcTemplate.batchUpdate(startsWith("insert into kpi_rollup"), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("test"))
+                .thenReturn(new int[0][]);
+        service.saveKpiData(LocalDateTime.now(), "v", "user", "uvci1", null, "CH");
+
+        service.flushRollup();
+        service.flushRollup();
+
+        var writes = captureRollupWrites(2);
+        assertEquals(1, writes.get(1).size());
+        assertEquals(1, meterRegistry.get("cc.kpi.rollup.failed").counter().count());
+        assertEquals(1, meterRegistry.get("cc.kpi.rollup.written").counter().count());
+    }
+
+    @Test
+    void flushRollup_removesWrittenExpiredBucketsAndKeepsLaterCounts() {
+        enableRollupOnly();
+        var expiredTimestamp = LocalDateTime.now().minusHours(3);
+        service.saveKpiData(expiredTimestamp, "v", "user", "uvci1", null, "CH");
+        service.flushRollup();
+        assertEquals(0, meterRegistry.get("cc.kpi.rollup.keys").gauge().value());
+
+        service.saveKpiData(expiredTimestamp, "v", "user", "uvci2", null, "CH");
+        assertEquals(1, meterRegistry.get("cc.kpi.rollup.keys").gauge().value());
+        service.flushRollup();
+
+        var writes = captureRollupWrites(2);
+        assertEquals(1, writes.get(1).size());
+        assertEquals(0, meterRegistry.get("cc.kpi.rollup.keys").gauge().value());
+    }
+
+    private void enableRollupOnly() {
+        ReflectionTestUtils.setField(service, "rawEnabled", false);
+        ReflectionTestUtils.setField(service, "rollupEnabled", true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Collection<?>> captureRollupWrites(int times) {
+        ArgumentCaptor<Collection<?>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(times)).batchUpdate(startsWith("insert into kpi_rollup"), captor.capture(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        return captor.getAllValues();
+    }
+}
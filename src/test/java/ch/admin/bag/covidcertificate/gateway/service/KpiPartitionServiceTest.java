@@ -0,0 +1,91 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KpiPartitionServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private KpiPartitionService service;
+
+    @BeforeEach
+    void initialize() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new KpiPartitionService(jdbcTemplate, meterRegistry);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "monthsAhead", 1);
+        ReflectionTestUtils.setField(service, "retentionMonths", 0);
+        service.init();
+        when(jdbcTemplate.queryForObject(KpiPartitionService.COUNT_DEFAULT_ROWS_SQL, Long.class)).thenReturn(0L);
+    }
+
+    @Test
+    void partitionName_and_monthOf() {
+        assertEquals("kpi_y2021m07", KpiPartitionService.partitionName(YearMonth.of(2021, 7)));
+        assertEquals(YearMonth.of(2021, 7), KpiPartitionService.monthOf("kpi_y2021m07"));
+        assertNull(KpiPartitionService.monthOf("kpi_default"));
+    }
+
+    @Test
+    void maintainPartitions_createsCurrentAndFutureMonths() {
+        service.maintainPartitions(YearMonth.of(2021, 12));
+
+        verify(jdbcTemplate).execute("create table if not exists kpi_y2021m12 partition of kpi for values from ('2021-12-01') to ('2022-01-01')");
+        verify(jdbcTemplate).execute("create table if not exists kpi_y2022m01 partition of kpi for values from ('2022-01-01') to ('2022-02-01')");
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class));
+    }
+
+    @Test
+    void maintainPartitions_skipsMonthsWithRowsInDefaultPartition() {
+        when(jdbcTemplate.queryForObject(KpiPartitionService.COUNT_DEFAULT_ROWS_SQL, Long.class)).thenReturn(5L);
+        when(jdbcTemplate.queryForObject(eq(KpiPartitionService.DEFAULT_ROWS_IN_MONTH_SQL), eq(Boolean.class), any(), any()))
+                .thenReturn(true, false);
+
+        service.maintainPartitions(YearMonth.of(2021, 12));
+
+        verify(jdbcTemplate, never()).execute("create table if not exists kpi_y2021m12 partition of kpi for values from ('2021-12-01') to ('2022-01-01')");
+        verify(jdbcTemplate).execute("create table if not exists kpi_y2022m01 partition of kpi for values from ('2022-01-01') to ('2022-02-01')");
+        assertEquals(5, meterRegistry.get("cc.kpi.partitions.default.rows").gauge().value());
+    }
+
+    @Test
+    void maintainPartitions_dropsExpiredPartitions() {
+        ReflectionTestUtils.setField(service, "retentionMonths", 12);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("kpi_default", "kpi_y2020m12", "kpi_y2021m01", "kpi_y2022m01"));
+
+        service.maintainPartitions(YearMonth.of(2022, 1));
+
+        verify(jdbcTemplate).execute("alter table kpi detach partition kpi_y2020m12");
+        verify(jdbcTemplate).execute("drop table kpi_y2020m12");
+        verify(jdbcTemplate, never()).execute("drop table kpi_y2021m01");
+        verify(jdbcTemplate, never()).execute("drop table kpi_default");
+    }
+
+    @Test
+    void maintainPartitions_doesNothingWhenDisabled() {
+        ReflectionTestUtils.setField(service, "enabled", false);
+
+        service.maintainPartitions();
+
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+}
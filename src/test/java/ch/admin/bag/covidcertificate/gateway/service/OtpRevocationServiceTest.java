@@ -2,24 +2,77 @@ package ch.admin.bag.covidcertificate.gateway.service;
 
 import ch.admin.bag.covidcertificate.gateway.domain.OtpRevocation;
 import ch.admin.bag.covidcertificate.gateway.domain.OtpRevocationRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class OtpRevocationServiceTest {
 
+    private OtpRevocationRepository otpRevocationRepository;
+    private OtpRevocationService service;
+
+    @BeforeEach
+    void initialize() {
+        otpRevocationRepository = mock(OtpRevocationRepository.class);
+        service = new OtpRevocationService(otpRevocationRepository);
+        ReflectionTestUtils.setField(service, "overlapSeconds", 60L);
+    }
+
     @Test
-    void getOtpRevocationsTest() {
-        OtpRevocationRepository otpRevocationRepository = mock(OtpRevocationRepository.class);
-        var otpRevocation = mock(OtpRevocation.class);
+    void isRevokedTest() {
+        var otpRevocation = mockOtpRevocation("revoked", LocalDateTime.now());
         when(otpRevocationRepository.findAll()).thenReturn(List.of(otpRevocation));
-        OtpRevocationService service = new OtpRevocationService(otpRevocationRepository);
 
-        List<OtpRevocation> result = service.getOtpRevocations();
-        assertEquals(otpRevocation, result.get(0));
+        assertTrue(service.isRevoked("revoked"));
+        assertFalse(service.isRevoked("other"));
+        assertFalse(service.isRevoked(null));
+        verify(otpRevocationRepository, times(1)).findAll();
+    }
+
+    @Test
+    void refresh_readsOnlyNewRevocationsAfterInitialLoad() {
+        var createdAt = LocalDateTime.now().minusMinutes(5);
+        var initial = mockOtpRevocation("initial", createdAt);
+        var added = mockOtpRevocation("added", LocalDateTime.now());
+        when(otpRevocationRepository.findAll()).thenReturn(List.of(initial));
+        when(otpRevocationRepository.findAllByCreatedAtGreaterThanEqual(createdAt.minusSeconds(60))).thenReturn(List.of(initial, added));
+
+        service.refresh();
+        assertFalse(service.isRevoked("added"));
+
+        service.refresh();
+        assertTrue(service.isRevoked("initial"));
+        assertTrue(service.isRevoked("added"));
+        verify(otpRevocationRepository, times(1)).findAll();
+    }
+
+    @Test
+    void refresh_loadsAllWhileNoRevocationExists() {
+        when(otpRevocationRepository.findAll()).thenReturn(List.of());
+
+        service.refresh();
+        service.refresh();
+
+        verify(otpRevocationRepository, times(2)).findAll();
+        verify(otpRevocationRepository, never()).findAllByCreatedAtGreaterThanEqual(any());
+    }
+
+    private OtpRevocation mockOtpRevocation(String jti, LocalDateTime createdAt) {
+        var otpRevocation = mock(OtpRevocation.class);
+        when(otpRevocation.getJti()).thenReturn(jti);
+        when(otpRevocation.getCreatedAt()).thenReturn(createdAt);
+        return otpRevocation;
     }
 }
@@ -0,0 +1,125 @@
+package ch.admin.bag.covidcertificate.gateway.service;
+
+import ch.admin.bag.covidcertificate.gateway.service.dto.ReadValueSetsException;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccineDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flextrade.jfixture.JFixture;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.util.List;
+
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.MANAGEMENT_SERVICE_UNAVAILABLE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueSetsServiceTest {
+
+    private static final JFixture fixture = new JFixture();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MockWebServer mockManagementService;
+    private SimpleMeterRegistry meterRegistry;
+    private CircuitBreaker circuitBreaker;
+    private ValueSetsService valueSetsService;
+
+    @BeforeEach
+    void initialize() throws IOException {
+        mockManagementService = new MockWebServer();
+        mockManagementService.start();
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreaker = CircuitBreaker.ofDefaults("cc-management-service");
+        valueSetsService = new ValueSetsService(WebClient.create(), meterRegistry, circuitBreaker, BulkheadRegistry.ofDefaults());
+        ReflectionTestUtils.setField(valueSetsService, "serviceUri",
+                String.format("http://localhost:%s/", mockManagementService.getPort()));
+        ReflectionTestUtils.setField(valueSetsService, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(valueSetsService, "maxStaleSeconds", 120L);
+        ReflectionTestUtils.setField(valueSetsService, "maxSize", 10L);
+        ReflectionTestUtils.setField(valueSetsService, "serveStaleOnError", true);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockManagementService.shutdown();
+    }
+
+    @Test
+    void getVaccines_readsValueSetOnlyOnce() throws Exception {
+        valueSetsService.init();
+        var vaccines = List.of(fixture.create(VaccineDto.class));
+        enqueue(vaccines);
+
+        valueSetsService.getVaccines();
+        var result = valueSetsService.getVaccines();
+
+        assertEquals(1, mockManagementService.getRequestCount());
+        assertEquals(vaccines.get(0).getProductCode(), result.get(0).getProductCode());
+    }
+
+    @Test
+    void getVaccines_servesStaleValueSetOnError() throws Exception {
+        ReflectionTestUtils.setField(valueSetsService, "maxStaleSeconds", 0L);
+        valueSetsService.init();
+        var vaccines = List.of(fixture.create(VaccineDto.class));
+        enqueue(vaccines);
+        mockManagementService.enqueue(new MockResponse().setResponseCode(500));
+
+        valueSetsService.getVaccines();
+        var result = valueSetsService.getVaccines();
+
+        assertEquals(2, mockManagementService.getRequestCount());
+        assertEquals(vaccines.get(0).getProductCode(), result.get(0).getProductCode());
+        assertEquals(1, meterRegistry.get("cc.valuesets.stale").counter().count());
+    }
+
+    @Test
+    void getVaccines_throwsOnErrorWithoutStaleValueSet() {
+        valueSetsService.init();
+        mockManagementService.enqueue(new MockResponse().setResponseCode(500));
+
+        assertThrows(ReadValueSetsException.class, () -> valueSetsService.getVaccines());
+    }
+
+    @Test
+    void getVaccines_failsFastIfCircuitBreakerIsOpen() {
+        valueSetsService.init();
+        circuitBreaker.transitionToOpenState();
+
+        var exception = assertThrows(ReadValueSetsException.class, () -> valueSetsService.getVaccines());
+
+        assertEquals(MANAGEMENT_SERVICE_UNAVAILABLE, exception.getError());
+        assertEquals(0, mockManagementService.getRequestCount());
+    }
+
+    @Test
+    void getCountryCodesByLanguage_boundsLastLoadedValueSets() throws Exception {
+        valueSetsService.init();
+        for (int i = 0; i < 20; i++) {
+            // an empty list, as CountryCodeDto cannot be deserialized by Jackson
+            enqueue(List.of());
+            valueSetsService.getCountryCodesByLanguage("language" + i);
+        }
+
+        assertEquals(20, mockManagementService.getRequestCount());
+        Cache<?, ?> lastLoadedValueSets = (Cache<?, ?>) ReflectionTestUtils.getField(valueSetsService, "lastLoadedValueSets");
+        lastLoadedValueSets.cleanUp();
+        assertTrue(lastLoadedValueSets.estimatedSize() <= 10);
+    }
+
+    private void enqueue(Object body) throws Exception {
+        mockManagementService.enqueue(new MockResponse()
+                .setBody(objectMapper.writeValueAsString(body))
+                .addHeader("Content-Type", "application/json"));
+    }
+}
@@ -0,0 +1,32 @@
+package ch.admin.bag.covidcertificate.gateway.service.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ManagementServiceResilienceConfigTest {
+
+    @Test
+    void isFailure_serverError() {
+        assertTrue(ManagementServiceResilienceConfig.isFailure(responseException(HttpStatus.BAD_GATEWAY)));
+    }
+
+    @Test
+    void isFailure_timeout() {
+        assertTrue(ManagementServiceResilienceConfig.isFailure(new TimeoutException()));
+    }
+
+    @Test
+    void isNoFailure_clientError() {
+        assertFalse(ManagementServiceResilienceConfig.isFailure(responseException(HttpStatus.BAD_REQUEST)));
+    }
+
+    private WebClientResponseException responseException(HttpStatus status) {
+        return WebClientResponseException.create(status.value(), status.getReasonPhrase(), null, null, null);
+    }
+}
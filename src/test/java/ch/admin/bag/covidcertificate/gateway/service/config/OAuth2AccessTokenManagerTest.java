@@ -0,0 +1,158 @@
+package ch.admin.bag.covidcertificate.gateway.service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2Error;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OAuth2AccessTokenManagerTest {
+
+    private static final String REGISTRATION_ID = "cc-api-gateway-service";
+    private static final Duration TOKEN_LIFETIME = Duration.ofMinutes(5);
+    private static final Duration REFRESH_SKEW = Duration.ofSeconds(60);
+
+    private final ClientRegistration clientRegistration = ClientRegistration.withRegistrationId(REGISTRATION_ID)
+            .clientId(REGISTRATION_ID)
+            .clientSecret("secret")
+            .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+            .tokenUri("http://localhost:8180/token")
+            .build();
+
+    private OAuth2AuthorizedClientProvider authorizedClientProvider;
+    private Clock clock;
+    private Instant now;
+    private SimpleMeterRegistry meterRegistry;
+    private OAuth2AccessTokenManager accessTokenManager;
+
+    @BeforeEach
+    void initialize() {
+        var clientRegistrationRepository = mock(ClientRegistrationRepository.class);
+        when(clientRegistrationRepository.findByRegistrationId(REGISTRATION_ID)).thenReturn(clientRegistration);
+        authorizedClientProvider = mock(OAuth2AuthorizedClientProvider.class);
+        when(authorizedClientProvider.authorize(any())).thenAnswer(invocation -> authorizedClient());
+        now = Instant.parse("2021-11-01T10:00:00Z");
+        clock = mock(Clock.class);
+        when(clock.instant()).thenAnswer(invocation -> now);
+        meterRegistry = new SimpleMeterRegistry();
+        accessTokenManager = new OAuth2AccessTokenManager(clientRegistrationRepository, authorizedClientProvider,
+                meterRegistry, REFRESH_SKEW, clock, List.of(REGISTRATION_ID));
+    }
+
+    @Test
+    void fetchesTokenOfGivenRegistrationsInBackground() {
+        accessTokenManager.refreshTokens();
+        var authorizedClient = accessTokenManager.authorize(authorizeRequest());
+
+        assertNotNull(authorizedClient);
+        verify(authorizedClientProvider, times(1)).authorize(any());
+    }
+
+    @Test
+    void reusesTokenUntilRefreshSkew() {
+        var authorizedClient = accessTokenManager.authorize(authorizeRequest());
+        now = now.plus(TOKEN_LIFETIME).minus(REFRESH_SKEW).minusSeconds(1);
+        accessTokenManager.refreshTokens();
+
+        assertSame(authorizedClient, accessTokenManager.authorize(authorizeRequest()));
+        verify(authorizedClientProvider, times(1)).authorize(any());
+    }
+
+    @Test
+    void refreshesTokenInBackground_ifExpiringWithinSkew() {
+        var authorizedClient = accessTokenManager.authorize(authorizeRequest());
+        now = now.plus(TOKEN_LIFETIME).minus(REFRESH_SKEW).plusSeconds(1);
+        accessTokenManager.refreshTokens();
+        var refreshedClient = accessTokenManager.authorize(authorizeRequest());
+
+        assertNotSame(authorizedClient, refreshedClient);
+        assertEquals(now, refreshedClient.getAccessToken().getIssuedAt());
+        verify(authorizedClientProvider, times(2)).authorize(any());
+    }
+
+    @Test
+    void usesCurrentToken_ifBackgroundRefreshFails() {
+        var authorizedClient = accessTokenManager.authorize(authorizeRequest());
+        when(authorizedClientProvider.authorize(any())).thenThrow(
+                new ClientAuthorizationException(new OAuth2Error("server_error"), REGISTRATION_ID));
+        now = now.plus(TOKEN_LIFETIME).minus(REFRESH_SKEW).plusSeconds(1);
+        accessTokenManager.refreshTokens();
+
+        assertSame(authorizedClient, accessTokenManager.authorize(authorizeRequest()));
+        assertEquals(1, meterRegistry.get("oauth2.token.refresh").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void fetchesTokenOnlyOnce_forConcurrentRequests() throws Exception {
+        var calls = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        when(authorizedClientProvider.authorize(any())).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            started.await(1, TimeUnit.SECONDS);
+            return authorizedClient();
+        });
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<OAuth2AuthorizedClient>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> accessTokenManager.authorize(authorizeRequest())));
+            }
+            started.countDown();
+            for (var future : futures) {
+                assertNotNull(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void exposesTokenAgeAndRefreshTime() {
+        accessTokenManager.refreshTokens();
+        now = now.plusSeconds(42);
+
+        assertEquals(42.0, meterRegistry.get("oauth2.token.age").tag("registration", REGISTRATION_ID).gauge().value());
+        assertEquals(1, meterRegistry.get("oauth2.token.refresh").tag("outcome", "success").timer().count());
+    }
+
+    private OAuth2AuthorizeRequest authorizeRequest() {
+        return OAuth2AuthorizeRequest.withClientRegistrationId(REGISTRATION_ID)
+                .principal("anonymousUser")
+                .build();
+    }
+
+    private OAuth2AuthorizedClient authorizedClient() {
+        var accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "token-" + now, now, now.plus(TOKEN_LIFETIME));
+        return new OAuth2AuthorizedClient(clientRegistration, REGISTRATION_ID, accessToken);
+    }
+}
@@ -0,0 +1,66 @@
+package ch.admin.bag.covidcertificate.gateway.service.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RestClientConfigTest {
+
+    private RestClientConfig restClientConfig;
+
+    @BeforeEach
+    void initialize() {
+        restClientConfig = new RestClientConfig();
+        ReflectionTestUtils.setField(restClientConfig, "maxConnections", 42);
+        ReflectionTestUtils.setField(restClientConfig, "pendingAcquireMaxCount", 100);
+        ReflectionTestUtils.setField(restClientConfig, "pendingAcquireTimeout", 10);
+        ReflectionTestUtils.setField(restClientConfig, "maxIdleTime", 50);
+        ReflectionTestUtils.setField(restClientConfig, "maxLifeTime", 600);
+        ReflectionTestUtils.setField(restClientConfig, "evictInBackground", 30);
+        ReflectionTestUtils.setField(restClientConfig, "leasingStrategy", "lifo");
+    }
+
+    @Test
+    void createsConnectionProviderWithConfiguredMaxConnections() {
+        var connectionProvider = restClientConfig.managementServiceConnectionProvider();
+        try {
+            assertEquals(42, connectionProvider.maxConnections());
+        } finally {
+            connectionProvider.dispose();
+        }
+    }
+
+    @Test
+    void throwsOnUnknownLeasingStrategy() {
+        ReflectionTestUtils.setField(restClientConfig, "leasingStrategy", "random");
+
+        assertThrows(IllegalStateException.class, () -> restClientConfig.managementServiceConnectionProvider());
+    }
+
+    @Test
+    void usesHttp11_ifHttp2IsDisabled() {
+        var httpClient = RestClientConfig.configureProtocol(HttpClient.create(), "https://localhost/", false);
+
+        assertArrayEquals(new HttpProtocol[]{HttpProtocol.HTTP11}, httpClient.configuration().protocols());
+    }
+
+    @Test
+    void negotiatesH2_forHttps() {
+        var httpClient = RestClientConfig.configureProtocol(HttpClient.create(), "https://localhost/", true);
+
+        assertArrayEquals(new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}, httpClient.configuration().protocols());
+    }
+
+    @Test
+    void upgradesToH2c_forHttp() {
+        var httpClient = RestClientConfig.configureProtocol(HttpClient.create(), "http://localhost:8120/", true);
+
+        assertArrayEquals(new HttpProtocol[]{HttpProtocol.H2C, HttpProtocol.HTTP11}, httpClient.configuration().protocols());
+    }
+}
@@ -0,0 +1,76 @@
+package ch.admin.bag.covidcertificate.gateway.service.util;
+
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flextrade.jfixture.JFixture;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UvciScannerTest {
+
+    static final JFixture fixture = new JFixture();
+    static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void findsUvciOfSerializedResponse() throws Exception {
+        var response = fixture.create(CovidCertificateCreateResponseDto.class);
+        var scanner = new UvciScanner();
+
+        scanner.update(objectMapper.writeValueAsBytes(response));
+
+        assertEquals(response.getUvci(), scanner.getUvci());
+    }
+
+    @Test
+    void findsUvciSplitOverBuffers() throws Exception {
+        var response = fixture.create(CovidCertificateCreateResponseDto.class);
+        var json = objectMapper.writeValueAsBytes(response);
+        var bufferFactory = new DefaultDataBufferFactory();
+        var scanner = new UvciScanner();
+
+        for (int offset = 0; offset < json.length; offset += 7) {
+            var chunk = Arrays.copyOfRange(json, offset, Math.min(offset + 7, json.length));
+            scanner.update(bufferFactory.wrap(chunk));
+        }
+
+        assertEquals(response.getUvci(), scanner.getUvci());
+    }
+
+    @Test
+    void ignoresUvciInNestedObjectsAndValues() {
+        var scanner = new UvciScanner();
+
+        scanner.update(bytes("{\"appDeliveryError\": {\"uvci\": \"nested\"}, \"pdf\": \"uvci\", \"text\": \"\\\"uvci\\\":\", \"uvci\" : \"urn:uvci:01:CH:1\"}"));
+
+        assertEquals("urn:uvci:01:CH:1", scanner.getUvci());
+    }
+
+    @Test
+    void skipsLongStrings() {
+        var scanner = new UvciScanner();
+        var longString = "A".repeat(UvciScanner.MAX_CAPTURED_LENGTH * 10);
+
+        scanner.update(bytes("{\"pdf\":\"" + longString + "\",\"uvci\":\"urn:uvci:01:CH:2\"}"));
+
+        assertEquals("urn:uvci:01:CH:2", scanner.getUvci());
+    }
+
+    @Test
+    void returnsNull_ifUvciIsNull() {
+        var scanner = new UvciScanner();
+
+        scanner.update(bytes("{\"uvci\":null,\"pdf\":\"abc\"}"));
+
+        assertNull(scanner.getUvci());
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
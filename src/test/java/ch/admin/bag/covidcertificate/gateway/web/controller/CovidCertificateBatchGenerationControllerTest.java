@@ -0,0 +1,172 @@
+package ch.admin.bag.covidcertificate.gateway.web.controller;
+
+import ch.admin.bag.covidcertificate.gateway.service.AuthorizationService;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
+import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateBatchGenerationService;
+import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateGenerationService;
+import ch.admin.bag.covidcertificate.gateway.service.InvalidBearerTokenException;
+import ch.admin.bag.covidcertificate.gateway.service.KpiDataService;
+import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateException;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CertificateBatchCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.IdentityDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationCertificateCreateDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flextrade.jfixture.JFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultMatcher;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION;
+import static ch.admin.bag.covidcertificate.gateway.FixtureCustomization.customizeVaccinationCertificateCreateDto;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_TIMEOUT;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_BEARER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+@ExtendWith(SpringExtension.class)
+class CovidCertificateBatchGenerationControllerTest {
+
+    private static final String URL = "/api/v1/covidcertificate/batch/vaccination";
+    private static final JFixture fixture = new JFixture();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Mock
+    private CovidCertificateGenerationService generationService;
+    @Mock
+    private KpiDataService kpiDataService;
+    @Mock
+    private AuthorizationService authorizationService;
+
+    private MockMvc mockMvc;
+    private VaccinationCertificateCreateDto first;
+    private VaccinationCertificateCreateDto second;
+
+    @BeforeAll
+    static void setUp() {
+        mapper.registerModule(new JavaTimeModule());
+        customizeVaccinationCertificateCreateDto(fixture);
+    }
+
+    @BeforeEach
+    void initialize() {
+        var batchGenerationService = new CovidCertificateBatchGenerationService();
+        ReflectionTestUtils.setField(batchGenerationService, "maxSize", 10);
+        ReflectionTestUtils.setField(batchGenerationService, "concurrency", 2);
+        var controller = new CovidCertificateBatchGenerationController(generationService, batchGenerationService,
+                authorizationService, new CertificateCreationKpiLogger(kpiDataService, new CertificateStageMetrics(new SimpleMeterRegistry(), List.of())));
+        this.mockMvc = standaloneSetup(controller, new ResponseStatusExceptionHandler()).build();
+
+        first = fixture.create(VaccinationCertificateCreateDto.class);
+        second = fixture.create(VaccinationCertificateCreateDto.class);
+        for (var createDto : List.of(first, second)) {
+            ReflectionTestUtils.setField(createDto, "address", null);
+            ReflectionTestUtils.setField(createDto, "appCode", null);
+        }
+    }
+
+    @Test
+    void authorizesBatchOnce() throws Exception {
+        when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class)))
+                .thenReturn(Mono.just(fixture.create(CovidCertificateCreateResponseDto.class)));
+
+        postRequest(batch(first, second), status().isOk());
+
+        verify(authorizationService, times(1)).validateAndGetId(any(), any());
+        verify(generationService, times(2)).createCovidCertificate(any(VaccinationCertificateCreateDto.class));
+    }
+
+    @Test
+    void returnsResultPerCertificate() throws Exception {
+        var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
+        when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class)))
+                .thenReturn(Mono.just(certificate))
+                .thenReturn(Mono.error(new CreateCertificateException(CREATE_CERTIFICATE_TIMEOUT)));
+
+        var result = postRequest(batch(first, second), status().isOk());
+
+        jsonPath("$.certificates[0].index").value(0).match(result);
+        jsonPath("$.certificates[0].certificate.uvci").value(certificate.getUvci()).match(result);
+        jsonPath("$.certificates[1].index").value(1).match(result);
+        jsonPath("$.certificates[1].error.errorCode").value(CREATE_CERTIFICATE_TIMEOUT.getErrorCode()).match(result);
+
+        verify(kpiDataService, times(1)).saveKpiData(any(), eq(KPI_TYPE_VACCINATION), any(), eq(certificate.getUvci()), any(), anyString());
+    }
+
+    @Test
+    void streamsResultsAsNdjson() throws Exception {
+        var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
+        when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class)))
+                .thenReturn(Mono.just(certificate))
+                .thenReturn(Mono.error(new CreateCertificateException(CREATE_CERTIFICATE_TIMEOUT)));
+
+        var result = mockMvc.perform(post(URL)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(batch(first, second))))
+                .andReturn();
+
+        var lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(0, mapper.readTree(lines[0]).get("index").asInt());
+        assertEquals(certificate.getUvci(), mapper.readTree(lines[0]).get("certificate").get("uvci").asText());
+        assertEquals(CREATE_CERTIFICATE_TIMEOUT.getErrorCode(), mapper.readTree(lines[1]).get("error").get("errorCode").asInt());
+    }
+
+    @Test
+    void returns403_withAuthorizationError() throws Exception {
+        when(authorizationService.validateAndGetId(any(), any())).thenThrow(new InvalidBearerTokenException(INVALID_BEARER));
+
+        postRequest(batch(first, second), status().isForbidden());
+
+        verify(generationService, never()).createCovidCertificate(any(VaccinationCertificateCreateDto.class));
+    }
+
+    @Test
+    void returns400_withEmptyBatch() throws Exception {
+        postRequest(batch(), status().isBadRequest());
+
+        verify(generationService, never()).createCovidCertificate(any(VaccinationCertificateCreateDto.class));
+    }
+
+    private CertificateBatchCreateDto<VaccinationCertificateCreateDto> batch(VaccinationCertificateCreateDto... createDtos) {
+        return new CertificateBatchCreateDto<>(fixture.create(String.class), fixture.create(IdentityDto.class), List.of(createDtos));
+    }
+
+    private MvcResult postRequest(Object batchDto, ResultMatcher matcher) throws Exception {
+        var result = mockMvc.perform(post(URL)
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(batchDto)))
+                .andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        matcher.match(result);
+        return result;
+    }
+}
@@ -2,23 +2,25 @@ package ch.admin.bag.covidcertificate.gateway.web.controller;
 
 import ch.admin.bag.covidcertificate.gateway.domain.TestType;
 import ch.admin.bag.covidcertificate.gateway.service.AuthorizationService;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
 import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateGenerationService;
 import ch.admin.bag.covidcertificate.gateway.service.InvalidBearerTokenException;
 import ch.admin.bag.covidcertificate.gateway.service.KpiDataService;
 import ch.admin.bag.covidcertificate.gateway.service.dto.AuthorizationCodeCreateDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateException;
 import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.flextrade.jfixture.JFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.EnumSource;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
@@ -28,17 +30,24 @@ import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultMatcher;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
 
 import static ch.admin.bag.covidcertificate.gateway.Constants.*;
 import static ch.admin.bag.covidcertificate.gateway.FixtureCustomization.*;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_CONCURRENCY_LIMIT;
 import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.INVALID_BEARER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -59,7 +68,6 @@ class CovidCertificateGenerationControllerTest {
     @Mock
     private AuthorizationService authorizationService;
 
-    @InjectMocks
     private CovidCertificateGenerationController controller;
     private MockMvc mockMvc;
 
@@ -77,6 +85,7 @@ class CovidCertificateGenerationControllerTest {
 
     @BeforeEach
     void initialize() {
+        this.controller = new CovidCertificateGenerationController(generationService, authorizationService, new CertificateCreationKpiLogger(kpiDataService, new CertificateStageMetrics(new SimpleMeterRegistry(), List.of())));
         this.mockMvc = standaloneSetup(controller, new ResponseStatusExceptionHandler()).build();
     }
 
@@ -84,7 +93,7 @@ class CovidCertificateGenerationControllerTest {
     @Disabled
     void createAuthCode() throws Exception {
         //given
-        when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(null);
+        when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.empty());
         ObjectMapper mapper = new ObjectMapper();
         mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
         mapper.registerModule(new JavaTimeModule());
@@ -110,7 +119,7 @@ class CovidCertificateGenerationControllerTest {
             ReflectionTestUtils.setField(this.vaccineCreateDto, "address", null);
             ReflectionTestUtils.setField(this.vaccineCreateDto, "appCode", null);
             CovidCertificateCreateResponseDto createResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(createResponseDto);
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.just(createResponseDto));
         }
 
         @Test
@@ -190,7 +199,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void savesVaccineKpiWithGeneratedUvci() throws Exception {
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.vaccineCreateDto, status().isOk());
 
@@ -237,7 +246,7 @@ class CovidCertificateGenerationControllerTest {
         void savesPrintKpiWithGeneratedUvci_whenAddressIsSet() throws Exception {
             ReflectionTestUtils.setField(this.vaccineCreateDto, "address", fixture.create(CovidCertificateAddressDto.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.vaccineCreateDto, status().isOk());
 
@@ -299,7 +308,7 @@ class CovidCertificateGenerationControllerTest {
         void savesInAppKpiWithGeneratedUvci_whenAppCodeIsSet() throws Exception {
             ReflectionTestUtils.setField(this.vaccineCreateDto, "appCode", fixture.create(String.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.vaccineCreateDto, status().isOk());
 
@@ -346,12 +355,22 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void returnsGeneratedCertificate() throws Exception {
             var certificateResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(certificateResponseDto);
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.just(certificateResponseDto));
 
             var actual = postRequest(URL, this.vaccineCreateDto, status().isOk());
 
             assertEquals(mapper.writeValueAsString(certificateResponseDto), actual.getResponse().getContentAsString());
         }
+
+        @Test
+        void returns503_withConcurrencyLimitError() throws Exception {
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class)))
+                    .thenReturn(Mono.error(new CreateCertificateException(CREATE_CERTIFICATE_CONCURRENCY_LIMIT)));
+
+            postRequest(URL, this.vaccineCreateDto, status().isServiceUnavailable());
+
+            verify(kpiDataService, never()).saveKpiData(any(), any(), any(), any(), any(), any());
+        }
     }
     
     @Nested
@@ -366,7 +385,7 @@ class CovidCertificateGenerationControllerTest {
             ReflectionTestUtils.setField(this.vaccineTouristCreateDto, "address", null);
             ReflectionTestUtils.setField(this.vaccineTouristCreateDto, "appCode", null);
             CovidCertificateCreateResponseDto createResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(createResponseDto);
+            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(Mono.just(createResponseDto));
         }
 
         @Test
@@ -446,7 +465,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void savesVaccineTouristKpiWithGeneratedUvci() throws Exception {
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.vaccineTouristCreateDto, status().isOk());
 
@@ -494,7 +513,7 @@ class CovidCertificateGenerationControllerTest {
         void savesPrintKpiWithGeneratedUvci_whenAddressIsSet() throws Exception {
             ReflectionTestUtils.setField(this.vaccineTouristCreateDto, "address", fixture.create(CovidCertificateAddressDto.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.vaccineTouristCreateDto, status().isOk());
 
@@ -556,7 +575,7 @@ class CovidCertificateGenerationControllerTest {
         void savesInAppKpiWithGeneratedUvci_whenAppCodeIsSet() throws Exception {
             ReflectionTestUtils.setField(this.vaccineTouristCreateDto, "appCode", fixture.create(String.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.vaccineTouristCreateDto, status().isOk());
 
@@ -602,7 +621,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void returnsGeneratedCertificate() throws Exception {
             var certificateResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(certificateResponseDto);
+            when(generationService.createCovidCertificate(any(VaccinationTouristCertificateCreateDto.class))).thenReturn(Mono.just(certificateResponseDto));
 
             var actual = postRequest(URL, this.vaccineTouristCreateDto, status().isOk());
 
@@ -622,7 +641,7 @@ class CovidCertificateGenerationControllerTest {
             ReflectionTestUtils.setField(this.testCreateDto, "address", null);
             ReflectionTestUtils.setField(this.testCreateDto, "appCode", null);
             CovidCertificateCreateResponseDto testCreateResponse = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(testCreateResponse);
+            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(Mono.just(testCreateResponse));
         }
 
         @Test
@@ -702,7 +721,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void savesTestKpiWithGeneratedUvci() throws Exception {
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.testCreateDto, status().isOk());
 
@@ -766,7 +785,7 @@ class CovidCertificateGenerationControllerTest {
         void savesPrintKpiWithGeneratedUvci_whenAddressIsSet() throws Exception {
             ReflectionTestUtils.setField(this.testCreateDto, "address", fixture.create(CovidCertificateAddressDto.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.testCreateDto, status().isOk());
 
@@ -846,7 +865,7 @@ class CovidCertificateGenerationControllerTest {
         void savesInAppKpiWithGeneratedUvci_whenAppCodeIsSet() throws Exception {
             ReflectionTestUtils.setField(this.testCreateDto, "appCode", fixture.create(String.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.testCreateDto, status().isOk());
 
@@ -911,7 +930,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void returnsGeneratedCertificate() throws Exception {
             var certificateResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(certificateResponseDto);
+            when(generationService.createCovidCertificate(any(TestCertificateCreateDto.class))).thenReturn(Mono.just(certificateResponseDto));
 
             var actual = postRequest(URL, this.testCreateDto, status().isOk());
 
@@ -931,7 +950,7 @@ class CovidCertificateGenerationControllerTest {
             ReflectionTestUtils.setField(this.recoveryCreateDto, "address", null);
             ReflectionTestUtils.setField(this.recoveryCreateDto, "appCode", null);
             CovidCertificateCreateResponseDto createResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(createResponseDto);
+            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(Mono.just(createResponseDto));
         }
 
         @Test
@@ -1011,7 +1030,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void savesRecoveryKpiWithGeneratedUvci() throws Exception {
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.recoveryCreateDto, status().isOk());
 
@@ -1051,7 +1070,7 @@ class CovidCertificateGenerationControllerTest {
         void savesPrintKpiWithGeneratedUvci_whenAddressIsSet() throws Exception {
             ReflectionTestUtils.setField(this.recoveryCreateDto, "address", fixture.create(CovidCertificateAddressDto.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.recoveryCreateDto, status().isOk());
 
@@ -1105,7 +1124,7 @@ class CovidCertificateGenerationControllerTest {
         void savesInAppKpiWithGeneratedUvci_whenAppCodeIsSet() throws Exception {
             ReflectionTestUtils.setField(this.recoveryCreateDto, "appCode", fixture.create(String.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.recoveryCreateDto, status().isOk());
 
@@ -1143,7 +1162,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void returnsGeneratedCertificate() throws Exception {
             var certificateResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(certificateResponseDto);
+            when(generationService.createCovidCertificate(any(RecoveryCertificateCreateDto.class))).thenReturn(Mono.just(certificateResponseDto));
 
             var actual = postRequest(URL, this.recoveryCreateDto, status().isOk());
 
@@ -1163,7 +1182,7 @@ class CovidCertificateGenerationControllerTest {
             ReflectionTestUtils.setField(this.recoveryRatCertificateCreateDto, "address", null);
             ReflectionTestUtils.setField(this.recoveryRatCertificateCreateDto, "appCode", null);
             CovidCertificateCreateResponseDto createResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(createResponseDto);
+            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(Mono.just(createResponseDto));
         }
 
         @Test
@@ -1243,7 +1262,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void savesRecoveryRatKpiWithGeneratedUvci() throws Exception {
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.recoveryRatCertificateCreateDto, status().isOk());
 
@@ -1283,7 +1302,7 @@ class CovidCertificateGenerationControllerTest {
         void savesPrintKpiWithGeneratedUvci_whenAddressIsSet() throws Exception {
             ReflectionTestUtils.setField(this.recoveryRatCertificateCreateDto, "address", fixture.create(CovidCertificateAddressDto.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.recoveryRatCertificateCreateDto, status().isOk());
 
@@ -1337,7 +1356,7 @@ class CovidCertificateGenerationControllerTest {
         void savesInAppKpiWithGeneratedUvci_whenAppCodeIsSet() throws Exception {
             ReflectionTestUtils.setField(this.recoveryRatCertificateCreateDto, "appCode", fixture.create(String.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.recoveryRatCertificateCreateDto, status().isOk());
 
@@ -1375,7 +1394,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void returnsGeneratedCertificate() throws Exception {
             var certificateResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(certificateResponseDto);
+            when(generationService.createCovidCertificate(any(RecoveryRatCertificateCreateDto.class))).thenReturn(Mono.just(certificateResponseDto));
 
             var actual = postRequest(URL, this.recoveryRatCertificateCreateDto, status().isOk());
 
@@ -1395,7 +1414,7 @@ class CovidCertificateGenerationControllerTest {
             ReflectionTestUtils.setField(this.antibodyCreateDto, "address", null);
             ReflectionTestUtils.setField(this.antibodyCreateDto, "appCode", null);
             CovidCertificateCreateResponseDto createResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(createResponseDto);
+            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(Mono.just(createResponseDto));
         }
 
         @Test
@@ -1475,7 +1494,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void savesAntibodyKpiWithGeneratedUvci() throws Exception {
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.antibodyCreateDto, status().isOk());
 
@@ -1515,7 +1534,7 @@ class CovidCertificateGenerationControllerTest {
         void savesPrintKpiWithGeneratedUvci_whenAddressIsSet() throws Exception {
             ReflectionTestUtils.setField(this.antibodyCreateDto, "address", fixture.create(CovidCertificateAddressDto.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.antibodyCreateDto, status().isOk());
 
@@ -1569,7 +1588,7 @@ class CovidCertificateGenerationControllerTest {
         void savesInAppKpiWithGeneratedUvci_whenAppCodeIsSet() throws Exception {
             ReflectionTestUtils.setField(this.antibodyCreateDto, "appCode", fixture.create(String.class));
             var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(certificate);
+            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(Mono.just(certificate));
 
             postRequest(URL, this.antibodyCreateDto, status().isOk());
 
@@ -1607,7 +1626,7 @@ class CovidCertificateGenerationControllerTest {
         @Test
         void returnsGeneratedCertificate() throws Exception {
             var certificateResponseDto = fixture.create(CovidCertificateCreateResponseDto.class);
-            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(certificateResponseDto);
+            when(generationService.createCovidCertificate(any(AntibodyCertificateCreateDto.class))).thenReturn(Mono.just(certificateResponseDto));
 
             var actual = postRequest(URL, this.antibodyCreateDto, status().isOk());
 
@@ -1615,6 +1634,56 @@ class CovidCertificateGenerationControllerTest {
         }
     }
     
+    @Nested
+    class NonBlockingModeTests {
+        private static final String URL = BASE_URL + "vaccination";
+
+        private VaccinationCertificateCreateDto vaccineCreateDto;
+
+        @BeforeEach()
+        void initialize() {
+            this.vaccineCreateDto = fixture.create(VaccinationCertificateCreateDto.class);
+            ReflectionTestUtils.setField(this.vaccineCreateDto, "address", null);
+            ReflectionTestUtils.setField(this.vaccineCreateDto, "appCode", null);
+        }
+
+        @Test
+        void releasesRequestThreadBeforeCertificateIsCreated_whenNonBlocking() throws Exception {
+            ReflectionTestUtils.setField(controller, "nonBlocking", true);
+            Sinks.One<CovidCertificateCreateResponseDto> response = Sinks.one();
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(response.asMono());
+
+            var result = mockMvc.perform(post(URL)
+                    .accept(MediaType.APPLICATION_JSON)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(mapper.writeValueAsString(this.vaccineCreateDto)))
+                    .andReturn();
+
+            assertTrue(result.getRequest().isAsyncStarted());
+            verify(kpiDataService, never()).saveKpiData(any(), any(), any(), any(), any(), any());
+
+            response.tryEmitValue(fixture.create(CovidCertificateCreateResponseDto.class));
+            mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+            verify(kpiDataService, times(1)).saveKpiData(any(), eq(KPI_TYPE_VACCINATION), any(), any(), any(), any());
+        }
+
+        @Test
+        void throwsErrorOnRequestThread_whenBlocking() throws Exception {
+            ReflectionTestUtils.setField(controller, "nonBlocking", false);
+            when(generationService.createCovidCertificate(any(VaccinationCertificateCreateDto.class)))
+                    .thenReturn(Mono.error(new CreateCertificateException(CREATE_CERTIFICATE_CONCURRENCY_LIMIT)));
+
+            var result = mockMvc.perform(post(URL)
+                    .accept(MediaType.APPLICATION_JSON)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(mapper.writeValueAsString(this.vaccineCreateDto)))
+                    .andExpect(status().isServiceUnavailable())
+                    .andReturn();
+
+            assertFalse(result.getRequest().isAsyncStarted());
+        }
+    }
+
     private <T extends CertificateCreateDto> T equalsSerialized(String expected) {
         return argThat((T certificateCreateDto) -> {
                     try {
@@ -1631,11 +1700,15 @@ class CovidCertificateGenerationControllerTest {
     private MvcResult postRequest(String url, CertificateCreateDto createDto, ResultMatcher matcher) throws Exception {
         var payload = mapper.writeValueAsString(createDto);
 
-        return mockMvc.perform(post(url)
+        var result = mockMvc.perform(post(url)
                 .accept(MediaType.APPLICATION_JSON)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(payload))
-                .andExpect(matcher)
                 .andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        matcher.match(result);
+        return result;
     }
 }
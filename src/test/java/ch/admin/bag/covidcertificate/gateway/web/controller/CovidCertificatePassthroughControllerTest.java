@@ -0,0 +1,162 @@
+package ch.admin.bag.covidcertificate.gateway.web.controller;
+
+import ch.admin.bag.covidcertificate.gateway.service.AuthorizationService;
+import ch.admin.bag.covidcertificate.gateway.service.CertificateStageMetrics;
+import ch.admin.bag.covidcertificate.gateway.service.CovidCertificateGenerationService;
+import ch.admin.bag.covidcertificate.gateway.service.KpiDataService;
+import ch.admin.bag.covidcertificate.gateway.service.dto.CreateCertificateException;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.CovidCertificateCreateResponseDto;
+import ch.admin.bag.covidcertificate.gateway.service.dto.incoming.VaccinationCertificateCreateDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flextrade.jfixture.JFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ch.admin.bag.covidcertificate.gateway.Constants.KPI_TYPE_VACCINATION;
+import static ch.admin.bag.covidcertificate.gateway.FixtureCustomization.customizeVaccinationCertificateCreateDto;
+import static ch.admin.bag.covidcertificate.gateway.error.ErrorList.CREATE_CERTIFICATE_TIMEOUT;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+@ExtendWith(SpringExtension.class)
+class CovidCertificatePassthroughControllerTest {
+
+    private static final String URL = "/api/v1/covidcertificate/vaccination";
+    private static final long ASYNC_TIMEOUT_MILLIS = 5000;
+    private static final JFixture fixture = new JFixture();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Mock
+    private CovidCertificateGenerationService generationService;
+    @Mock
+    private KpiDataService kpiDataService;
+    @Mock
+    private AuthorizationService authorizationService;
+
+    private MockMvc mockMvc;
+    private VaccinationCertificateCreateDto createDto;
+
+    @BeforeAll
+    static void setUp() {
+        mapper.registerModule(new JavaTimeModule());
+        customizeVaccinationCertificateCreateDto(fixture);
+    }
+
+    @BeforeEach
+    void initialize() {
+        var controller = new CovidCertificatePassthroughController(generationService, authorizationService, new CertificateCreationKpiLogger(kpiDataService, new CertificateStageMetrics(new SimpleMeterRegistry(), List.of())));
+        this.mockMvc = standaloneSetup(controller, new ResponseStatusExceptionHandler()).build();
+        this.createDto = fixture.create(VaccinationCertificateCreateDto.class);
+        ReflectionTestUtils.setField(this.createDto, "address", null);
+        ReflectionTestUtils.setField(this.createDto, "appCode", null);
+    }
+
+    @Test
+    void writesUpstreamResponseUnchanged() throws Exception {
+        var json = mapper.writeValueAsBytes(fixture.create(CovidCertificateCreateResponseDto.class));
+        when(generationService.streamCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.just(chunked(json)));
+
+        var response = postAndAwaitBody().getResponse();
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(MediaType.APPLICATION_JSON_VALUE, response.getContentType());
+        assertArrayEquals(json, response.getContentAsByteArray());
+    }
+
+    @Test
+    void logsKpiWithScannedUvci() throws Exception {
+        var certificate = fixture.create(CovidCertificateCreateResponseDto.class);
+        var userExtId = fixture.create(String.class);
+        when(authorizationService.validateAndGetId(any(), any())).thenReturn(userExtId);
+        when(generationService.streamCovidCertificate(any(VaccinationCertificateCreateDto.class)))
+                .thenReturn(Mono.just(chunked(mapper.writeValueAsBytes(certificate))));
+
+        postAndAwaitBody();
+
+        verify(kpiDataService).saveKpiData(any(), eq(KPI_TYPE_VACCINATION), eq(userExtId), eq(certificate.getUvci()), any(), any());
+    }
+
+    @Test
+    void releasesRequestThreadWhileBodyIsOpen() throws Exception {
+        var json = mapper.writeValueAsBytes(fixture.create(CovidCertificateCreateResponseDto.class));
+        Sinks.Many<DataBuffer> body = Sinks.many().unicast().onBackpressureBuffer();
+        when(generationService.streamCovidCertificate(any(VaccinationCertificateCreateDto.class))).thenReturn(Mono.just(body.asFlux()));
+
+        var result = mockMvc.perform(asyncDispatch(post())).andReturn();
+
+        // the dispatch returned while the management service has not sent any byte of the body
+        assertTrue(result.getRequest().isAsyncStarted());
+        verify(kpiDataService, never()).saveKpiData(any(), any(), any(), any(), any(), any());
+
+        chunked(json).subscribe(body::tryEmitNext);
+        body.tryEmitComplete();
+        result.getAsyncResult(ASYNC_TIMEOUT_MILLIS);
+
+        assertArrayEquals(json, result.getResponse().getContentAsByteArray());
+        verify(kpiDataService).saveKpiData(any(), eq(KPI_TYPE_VACCINATION), any(), any(), any(), any());
+    }
+
+    @Test
+    void propagatesErrorBeforeBody() throws Exception {
+        when(generationService.streamCovidCertificate(any(VaccinationCertificateCreateDto.class)))
+                .thenReturn(Mono.error(new CreateCertificateException(CREATE_CERTIFICATE_TIMEOUT)));
+
+        var response = mockMvc.perform(asyncDispatch(post())).andReturn().getResponse();
+
+        assertEquals(CREATE_CERTIFICATE_TIMEOUT.getErrorCode(), mapper.readTree(response.getContentAsString()).get("errorCode").asInt());
+        assertEquals(CREATE_CERTIFICATE_TIMEOUT.getHttpStatus().value(), response.getStatus());
+        verify(kpiDataService, never()).saveKpiData(any(), any(), any(), any(), any(), any());
+    }
+
+    private MvcResult post() throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders.post(URL)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(createDto)))
+                .andReturn();
+    }
+
+    private MvcResult postAndAwaitBody() throws Exception {
+        var result = mockMvc.perform(asyncDispatch(post())).andReturn();
+        result.getAsyncResult(ASYNC_TIMEOUT_MILLIS);
+        return result;
+    }
+
+    private static Flux<DataBuffer> chunked(byte[] json) {
+        var bufferFactory = new DefaultDataBufferFactory();
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < json.length; offset += 64) {
+            buffers.add(bufferFactory.wrap(Arrays.copyOfRange(json, offset, Math.min(offset + 64, json.length))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+}
@@ -0,0 +1,25 @@
+package ch.admin.bag.covidcertificate.gateway.web.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueSetResponseCacheTest {
+
+    @Test
+    void acceptsGzip_listedEncoding() {
+        assertTrue(ValueSetResponseCache.acceptsGzip("gzip"));
+        assertTrue(ValueSetResponseCache.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(ValueSetResponseCache.acceptsGzip("br, *"));
+    }
+
+    @Test
+    void acceptsGzip_rejectedOrUnknownEncoding() {
+        assertFalse(ValueSetResponseCache.acceptsGzip(null));
+        assertFalse(ValueSetResponseCache.acceptsGzip("gzip;q=0"));
+        assertFalse(ValueSetResponseCache.acceptsGzip("gzip; q=0.0, *"));
+        assertFalse(ValueSetResponseCache.acceptsGzip("x-gzip-foo"));
+        assertFalse(ValueSetResponseCache.acceptsGzip("identity, *;q=0"));
+    }
+}